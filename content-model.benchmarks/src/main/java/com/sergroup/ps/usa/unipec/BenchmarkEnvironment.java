@@ -0,0 +1,103 @@
+package com.sergroup.ps.usa.unipec;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Sets up a working directory with a synthetic content model and a
+ * config.properties pointing at it, and makes ConfigurationManager pick it up.
+ *
+ * ConfigurationManager reads its file once per JVM, so this has to run before
+ * any extractor class is touched. JMH runs every benchmark and parameter
+ * combination in a fresh fork, which is what makes per-benchmark settings work;
+ * the benchmarks must not be run with -f 0.
+ */
+final class BenchmarkEnvironment
+{
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	final Path directory;
+	final Path documentTypesPath;
+	final Path attributeDefinitionsPath;
+	final Path outputDirectory;
+	final SyntheticContentModel model;
+
+	private BenchmarkEnvironment(Path directory, SyntheticContentModel model)
+	{
+		this.directory = directory;
+		this.documentTypesPath = directory.resolve("data").resolve("document_types.json");
+		this.attributeDefinitionsPath = directory.resolve("data").resolve("attribute_definitions.json");
+		this.outputDirectory = directory.resolve("generated_tables");
+		this.model = model;
+	}
+
+	static BenchmarkEnvironment prepare(int documentTypes, int attributesPerType, int attributeDefinitions, boolean binary) throws IOException
+	{
+		if (System.getProperty("config.dir") != null)
+		{
+			throw new IllegalStateException("config.dir is already set; benchmarks must run in forked JVMs");
+		}
+
+		Path directory = Files.createTempDirectory("content-model-bench");
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> delete(directory)));
+		SyntheticContentModel model = new SyntheticContentModel(documentTypes, attributesPerType, attributeDefinitions, 42);
+		BenchmarkEnvironment environment = new BenchmarkEnvironment(directory, model);
+		model.writeTo(environment.documentTypesPath.getParent());
+
+		try (Writer config = Files.newBufferedWriter(directory.resolve("config.properties")))
+		{
+			config.write("api.baseUrl=http://localhost/\n");
+			config.write("fetch.policy=offline\n");
+			config.write("input.json.path=" + forProperties(environment.documentTypesPath) + "\n");
+			config.write("attribute.definitions.path=" + forProperties(environment.attributeDefinitionsPath) + "\n");
+			config.write("attribute.definitions.binary=" + binary + "\n");
+			config.write("output.directory=" + forProperties(environment.outputDirectory) + "\n");
+			// Every run renders everything, otherwise later iterations would measure the manifest check
+			config.write("output.incremental=false\n");
+			config.write("logging.level=WARNING\n");
+		}
+		System.setProperty("config.dir", directory.toString());
+		return environment;
+	}
+
+	private static void delete(Path directory)
+	{
+		try (Stream<Path> paths = Files.walk(directory))
+		{
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		} catch (IOException e)
+		{
+			System.err.println("Could not delete " + directory + ": " + e.getMessage());
+		}
+	}
+
+	private static String forProperties(Path path)
+	{
+		return path.toAbsolutePath().toString().replace('\\', '/');
+	}
+
+	List<JsonNode> readDocumentTypes(int limit) throws IOException
+	{
+		List<JsonNode> documentTypes = new ArrayList<>();
+		try (JsonParser parser = mapper.getFactory().createParser(documentTypesPath.toFile()))
+		{
+			parser.nextToken();
+			while (documentTypes.size() < limit && parser.nextToken() == JsonToken.START_OBJECT)
+			{
+				documentTypes.add(mapper.readTree(parser));
+			}
+		}
+		return documentTypes;
+	}
+}
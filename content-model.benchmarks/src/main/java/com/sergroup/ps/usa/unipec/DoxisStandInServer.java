@@ -0,0 +1,164 @@
+package com.sergroup.ps.usa.unipec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local stand-in for the Doxis REST API with the login, documentTypes and
+ * attributeDefinitions endpoints the extractor uses. Responses are streamed
+ * from a SyntheticContentModel, so even very large orgs need no memory or disk.
+ *
+ * Latency is added before every snapshot response, and a configurable share
+ * of snapshot requests fails with 503. Snapshot responses carry an ETag and
+ * support If-None-Match and gzip, like the real server.
+ */
+public class DoxisStandInServer implements AutoCloseable
+{
+	static final String TOKEN = "stand-in-token";
+
+	private final SyntheticContentModel model;
+	private final long latencyMillis;
+	private final double errorRate;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final String etagPrefix;
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong injectedErrors = new AtomicLong();
+
+	public DoxisStandInServer(SyntheticContentModel model, int port, long latencyMillis, double errorRate) throws IOException
+	{
+		this.model = model;
+		this.latencyMillis = latencyMillis;
+		this.errorRate = errorRate;
+		this.etagPrefix = "\"" + model.getDocumentTypes() + "-" + model.getAttributeDefinitions() + "-" + Integer.toHexString(model.uuid(0).hashCode()) + "-";
+
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+		server.createContext("/api/v1/login", this::login);
+		server.createContext("/api/v1/documentTypes", exchange -> snapshot(exchange, "documentTypes"));
+		server.createContext("/api/v1/attributeDefinitions", exchange -> snapshot(exchange, "attributeDefinitions"));
+		executor = Executors.newFixedThreadPool(8);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	public String getBaseUrl()
+	{
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/api/v1/";
+	}
+
+	public long getRequests()
+	{
+		return requests.get();
+	}
+
+	public long getInjectedErrors()
+	{
+		return injectedErrors.get();
+	}
+
+	private void login(HttpExchange exchange) throws IOException
+	{
+		try (exchange; InputStream body = exchange.getRequestBody())
+		{
+			requests.incrementAndGet();
+			body.readAllBytes();
+			if (!"POST".equals(exchange.getRequestMethod()))
+			{
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			// The real server answers with the token as a JSON string
+			byte[] response = ("\"" + TOKEN + "\"").getBytes();
+			exchange.getResponseHeaders().set("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, response.length);
+			exchange.getResponseBody().write(response);
+		}
+	}
+
+	private void snapshot(HttpExchange exchange, String endpoint) throws IOException
+	{
+		try (exchange)
+		{
+			requests.incrementAndGet();
+			if (!("Bearer " + TOKEN).equals(exchange.getRequestHeaders().getFirst("Authorization")))
+			{
+				exchange.sendResponseHeaders(401, -1);
+				return;
+			}
+			if (latencyMillis > 0)
+			{
+				Thread.sleep(latencyMillis);
+			}
+			if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate)
+			{
+				injectedErrors.incrementAndGet();
+				exchange.sendResponseHeaders(503, -1);
+				return;
+			}
+
+			String etag = etagPrefix + endpoint + "\"";
+			exchange.getResponseHeaders().set("ETag", etag);
+			if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match")))
+			{
+				exchange.sendResponseHeaders(304, -1);
+				return;
+			}
+
+			exchange.getResponseHeaders().set("Content-Type", "application/json");
+			String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+			boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+			if (gzip)
+			{
+				exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+			}
+			// Length 0 means a chunked response, the body is generated while it is sent
+			exchange.sendResponseHeaders(200, 0);
+			try (OutputStream body = gzip ? new GZIPOutputStream(exchange.getResponseBody(), 64 * 1024) : exchange.getResponseBody())
+			{
+				if ("documentTypes".equals(endpoint))
+				{
+					model.writeDocumentTypes(body);
+				} else
+				{
+					model.writeAttributeDefinitions(body);
+				}
+			}
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Usage: DoxisStandInServer documentTypes attributesPerType attributeDefinitions [port] [latencyMillis] [errorRate]
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 3)
+		{
+			System.err.println("Usage: DoxisStandInServer documentTypes attributesPerType attributeDefinitions [port] [latencyMillis] [errorRate]");
+			System.exit(1);
+		}
+		SyntheticContentModel model = new SyntheticContentModel(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]), 42);
+		DoxisStandInServer server = new DoxisStandInServer(model, args.length > 3 ? Integer.parseInt(args[3]) : 8089,
+				args.length > 4 ? Long.parseLong(args[4]) : 0, args.length > 5 ? Double.parseDouble(args[5]) : 0);
+		System.out.println("Doxis stand-in listening on " + server.getBaseUrl());
+	}
+}
@@ -0,0 +1,79 @@
+package com.sergroup.ps.usa.unipec;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Parse cost of the two snapshots: loading the attribute definitions into
+ * AttributeDefinitionsCache (from JSON, or by opening the binary snapshot),
+ * and streaming the document types array the way processJson() does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBenchmark
+{
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	@Param({ "2000" })
+	public int documentTypes;
+
+	@Param({ "60" })
+	public int attributesPerType;
+
+	@Param({ "100000" })
+	public int attributeDefinitions;
+
+	@Param({ "true", "false" })
+	public boolean binary;
+
+	private BenchmarkEnvironment environment;
+	private AttributeDefinitionsCache cache;
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		environment = BenchmarkEnvironment.prepare(documentTypes, attributesPerType, attributeDefinitions, binary);
+		cache = new AttributeDefinitionsCache(ConfigurationManager.getInstance());
+	}
+
+	@Benchmark
+	public int loadAttributeDefinitions() throws IOException
+	{
+		cache.loadAttributeDefinitionsFromFile(environment.attributeDefinitionsPath.toString());
+		return cache.getCacheSize();
+	}
+
+	@Benchmark
+	public void parseDocumentTypes(Blackhole blackhole) throws IOException
+	{
+		try (JsonParser parser = mapper.getFactory().createParser(environment.documentTypesPath.toFile()))
+		{
+			parser.nextToken();
+			while (parser.nextToken() == JsonToken.START_OBJECT)
+			{
+				blackhole.consume(mapper.readTree(parser));
+			}
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package com.sergroup.ps.usa.unipec;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs the extractor end to end against a DoxisStandInServer in the same JVM
+ * and reports the time spent in each phase of DocumentTypesFetcher's run and
+ * the peak memory use.
+ *
+ * The phases are driven one by one in the same order as
+ * DocumentTypesFetcher.run(), so they can be timed separately. The
+ * stand-in streams its responses, so its share of the reported memory is small.
+ *
+ * Usage: LoadTestHarness [documentTypes] [attributesPerType] [attributeDefinitions] [latencyMillis] [errorRate] [workDirectory]
+ */
+public class LoadTestHarness
+{
+	public static void main(String[] args) throws Exception
+	{
+		int documentTypes = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int attributesPerType = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+		int attributeDefinitions = args.length > 2 ? Integer.parseInt(args[2]) : 200000;
+		long latencyMillis = args.length > 3 ? Long.parseLong(args[3]) : 0;
+		double errorRate = args.length > 4 ? Double.parseDouble(args[4]) : 0;
+		Path workDirectory = args.length > 5 ? Paths.get(args[5]) : Files.createTempDirectory("content-model-load");
+
+		SyntheticContentModel model = new SyntheticContentModel(documentTypes, attributesPerType, attributeDefinitions, 42);
+		Map<String, Long> phases = new LinkedHashMap<>();
+		boolean rendered = false;
+		long start = System.nanoTime();
+
+		try (DoxisStandInServer server = new DoxisStandInServer(model, 0, latencyMillis, errorRate))
+		{
+			writeConfiguration(workDirectory, server.getBaseUrl());
+			System.out.println("Running against " + server.getBaseUrl() + " with " + documentTypes + " document types x " + attributesPerType
+					+ " attributes, " + attributeDefinitions + " attribute definitions, in " + workDirectory.toAbsolutePath());
+
+			try
+			{
+				ConfigurationManager config = ConfigurationManager.getInstance();
+				DocumentTypesFetcher fetcher = new DocumentTypesFetcher(config);
+				RunMetrics metrics = new RunMetrics(config);
+				long phaseStart = System.nanoTime();
+				String jwt = fetcher.login();
+				phaseStart = endPhase(phases, "login", phaseStart);
+
+				CompletableFuture<Void> attributes = fetcher.getAttributeDefinitions().initializeAsync(fetcher.getDownloader(), jwt, server.getBaseUrl(), metrics);
+				CompletableFuture<Void> types = fetcher.fetchAndSaveDocumentTypesAsync(jwt, metrics);
+				SnapshotDownloader.awaitAll(attributes, types);
+				phaseStart = endPhase(phases, "fetch + load attribute definitions", phaseStart);
+
+				SnapshotDiff.run(config);
+				phaseStart = endPhase(phases, "snapshot diff", phaseStart);
+
+				rendered = fetcher.getConverter().process(metrics);
+				endPhase(phases, "render", phaseStart);
+			} catch (IOException e)
+			{
+				System.out.println("Run failed: " + e.getMessage());
+			}
+
+			System.out.println();
+			for (Map.Entry<String, Long> phase : phases.entrySet())
+			{
+				System.out.printf("%-40s %10d ms%n", phase.getKey(), phase.getValue());
+			}
+			System.out.printf("%-40s %10d ms%n", "total", (System.nanoTime() - start) / 1_000_000);
+			System.out.printf("%-40s %10s%n", "pages rendered", rendered ? "yes" : "no");
+			System.out.printf("%-40s %10d%n", "stand-in requests", server.getRequests());
+			System.out.printf("%-40s %10d%n", "injected errors", server.getInjectedErrors());
+			System.out.printf("%-40s %10s%n", "peak RSS", peakResidentSetSize());
+			System.out.printf("%-40s %10d MB%n", "peak heap (sum of pool peaks)", peakHeapBytes() / (1024 * 1024));
+		}
+		System.exit(rendered ? 0 : 1);
+	}
+
+	private static long endPhase(Map<String, Long> phases, String name, long phaseStart)
+	{
+		long now = System.nanoTime();
+		phases.put(name, (now - phaseStart) / 1_000_000);
+		return now;
+	}
+
+	// Must run before any extractor class is loaded, ConfigurationManager reads its file only once
+	private static void writeConfiguration(Path workDirectory, String baseUrl) throws IOException
+	{
+		Files.createDirectories(workDirectory);
+		String directory = workDirectory.toAbsolutePath().toString().replace('\\', '/');
+		try (Writer config = Files.newBufferedWriter(workDirectory.resolve("config.properties")))
+		{
+			config.write("api.baseUrl=" + baseUrl + "\n");
+			config.write("api.customerName=stand-in\n");
+			config.write("api.userName=stand-in\n");
+			config.write("api.password=stand-in\n");
+			config.write("fetch.policy=always\n");
+			config.write("input.json.path=" + directory + "/data/document_types.json\n");
+			config.write("attribute.definitions.path=" + directory + "/data/attribute_definitions.json\n");
+			config.write("output.directory=" + directory + "/generated_tables\n");
+			config.write("logging.level=WARNING\n");
+		}
+		Files.createDirectories(workDirectory.resolve("data"));
+		System.setProperty("config.dir", directory);
+	}
+
+	// VmHWM is the high-water mark of the resident set size, only available on Linux
+	private static String peakResidentSetSize()
+	{
+		try
+		{
+			for (String line : Files.readAllLines(Paths.get("/proc/self/status")))
+			{
+				if (line.startsWith("VmHWM:"))
+				{
+					long kilobytes = Long.parseLong(line.replaceAll("[^0-9]", ""));
+					return (kilobytes / 1024) + " MB";
+				}
+			}
+		} catch (IOException | NumberFormatException e)
+		{
+			// Fall through, not available on this platform
+		}
+		return "n/a";
+	}
+
+	private static long peakHeapBytes()
+	{
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if (pool.getType() == MemoryType.HEAP)
+			{
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+}
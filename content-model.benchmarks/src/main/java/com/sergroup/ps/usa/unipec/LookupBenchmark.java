@@ -0,0 +1,65 @@
+package com.sergroup.ps.usa.unipec;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * AttributeDefinitionsCache lookups by UUID, against the in-memory map or the
+ * memory-mapped binary snapshot. One in a hundred lookups misses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LookupBenchmark
+{
+	private static final int KEYS = 1 << 16;
+
+	@Param({ "100000" })
+	public int attributeDefinitions;
+
+	@Param({ "true", "false" })
+	public boolean binary;
+
+	private AttributeDefinitionsCache cache;
+	private String[] uuids;
+	private int next;
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		BenchmarkEnvironment environment = BenchmarkEnvironment.prepare(1, 1, attributeDefinitions, binary);
+		cache = new AttributeDefinitionsCache(ConfigurationManager.getInstance());
+		cache.loadAttributeDefinitionsFromFile(environment.attributeDefinitionsPath.toString());
+
+		Random random = new Random(42);
+		uuids = new String[KEYS];
+		for (int i = 0; i < KEYS; i++)
+		{
+			// Fresh strings, as they come out of the document types parser
+			int index = random.nextInt(100) == 0 ? attributeDefinitions + i : random.nextInt(attributeDefinitions);
+			uuids[i] = new String(environment.model.uuid(index));
+		}
+	}
+
+	@Benchmark
+	public AttributeDefinition lookup()
+	{
+		return cache.getAttributeDefinition(uuids[next++ & (KEYS - 1)]);
+	}
+}
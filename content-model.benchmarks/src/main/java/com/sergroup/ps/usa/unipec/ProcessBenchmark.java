@@ -0,0 +1,57 @@
+package com.sergroup.ps.usa.unipec;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A complete JsonToHtmlTableConverter.process() run from the saved snapshots,
+ * including writing every page, the index, the search index and the where-used
+ * pages to disk. Incremental rendering is off, so every run does all the work.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProcessBenchmark
+{
+	@Param({ "2000" })
+	public int documentTypes;
+
+	@Param({ "60" })
+	public int attributesPerType;
+
+	@Param({ "100000" })
+	public int attributeDefinitions;
+
+	private JsonToHtmlTableConverter converter;
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		BenchmarkEnvironment environment = BenchmarkEnvironment.prepare(documentTypes, attributesPerType, attributeDefinitions, true);
+		ConfigurationManager config = ConfigurationManager.getInstance();
+		AttributeDefinitionsCache cache = new AttributeDefinitionsCache(config);
+		cache.loadAttributeDefinitionsFromFile(environment.attributeDefinitionsPath.toString());
+		converter = new JsonToHtmlTableConverter(config, cache);
+	}
+
+	@Benchmark
+	public boolean process()
+	{
+		return converter.process(new RunMetrics(ConfigurationManager.getInstance()));
+	}
+}
@@ -0,0 +1,88 @@
+package com.sergroup.ps.usa.unipec;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Rendering of single table pages into a discarding writer, so the numbers
+ * exclude disk I/O, and of index.html for all classes. The row fragment cache
+ * fills during warmup, so renderTable measures the steady state of a full run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark
+{
+	@Param({ "2000" })
+	public int documentTypes;
+
+	@Param({ "60" })
+	public int attributesPerType;
+
+	@Param({ "100000" })
+	public int attributeDefinitions;
+
+	private JsonToHtmlTableConverter converter;
+	private RunMetrics metrics;
+	private List<JsonNode> classes;
+	private List<TableSummary> summaries;
+	private int next;
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		BenchmarkEnvironment environment = BenchmarkEnvironment.prepare(documentTypes, attributesPerType, attributeDefinitions, true);
+		ConfigurationManager config = ConfigurationManager.getInstance();
+		AttributeDefinitionsCache cache = new AttributeDefinitionsCache(config);
+		cache.loadAttributeDefinitionsFromFile(environment.attributeDefinitionsPath.toString());
+		converter = new JsonToHtmlTableConverter(config, cache);
+		metrics = new RunMetrics(config);
+		classes = environment.readDocumentTypes(documentTypes);
+
+		summaries = new ArrayList<>(classes.size());
+		for (int i = 0; i < classes.size(); i++)
+		{
+			summaries.add(new TableSummary(classes.get(i).get("name").asText(), "table_" + (i + 1) + ".html", attributesPerType, null));
+		}
+	}
+
+	@Benchmark
+	public int renderTable() throws IOException
+	{
+		int index = next++ % classes.size();
+		return converter.generateTable(classes.get(index), index + 1, Writer.nullWriter());
+	}
+
+	@Benchmark
+	public int renderVirtualTable() throws IOException
+	{
+		int index = next++ % classes.size();
+		return converter.generateVirtualTable(classes.get(index), index + 1, Writer.nullWriter());
+	}
+
+	@Benchmark
+	public void writeIndex() throws IOException
+	{
+		converter.writeOutputFiles(summaries, metrics);
+	}
+}
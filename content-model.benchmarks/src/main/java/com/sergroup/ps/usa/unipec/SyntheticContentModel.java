@@ -0,0 +1,216 @@
+package com.sergroup.ps.usa.unipec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Generates a Doxis content model of a given size in the JSON shapes returned by
+ * the documentTypes and attributeDefinitions endpoints.
+ *
+ * Attribute sharing follows what real orgs look like: a handful of system
+ * attributes (title, owner, dates...) appear in nearly every class, the rest are
+ * drawn from a Zipf distribution over the definitions, so some attributes are
+ * shared by many classes and most by few. A small fraction of references point
+ * to UUIDs without a definition, as happens when definitions are deleted.
+ *
+ * Everything is derived from the seed and the position of each item, so the
+ * output is reproducible and can be streamed without holding the model in memory.
+ */
+public class SyntheticContentModel
+{
+	private static final JsonFactory jsonFactory = new JsonFactory();
+	private static final String[] DATA_TYPES = { "STRING", "STRING", "STRING", "STRING", "STRING", "STRING", "DATE", "DATE", "INTEGER", "DECIMAL",
+			"BOOLEAN" };
+	private static final String[] MULTIVALUE_TYPES = { "SINGLE_VALUE", "SINGLE_VALUE", "SINGLE_VALUE", "MULTI_VALUE" };
+	private static final String[] FULLTEXT_USAGES = { "NONE", "INDEX", "INDEX_AND_STORE" };
+	private static final double UNKNOWN_REFERENCE_RATE = 0.005;
+
+	private final int documentTypes;
+	private final int attributesPerType;
+	private final int attributeDefinitions;
+	private final int systemAttributes;
+	private final long seed;
+	// Cumulative Zipf weights over the non-system definitions
+	private final double[] cumulativeWeights;
+
+	public SyntheticContentModel(int documentTypes, int attributesPerType, int attributeDefinitions, long seed)
+	{
+		if (attributesPerType > attributeDefinitions)
+		{
+			throw new IllegalArgumentException("Cannot give each class " + attributesPerType + " distinct attributes out of " + attributeDefinitions);
+		}
+		this.documentTypes = documentTypes;
+		this.attributesPerType = attributesPerType;
+		this.attributeDefinitions = attributeDefinitions;
+		this.systemAttributes = Math.min(12, Math.min(attributesPerType / 2, attributeDefinitions / 10));
+		this.seed = seed;
+
+		int shared = attributeDefinitions - systemAttributes;
+		cumulativeWeights = new double[shared];
+		double total = 0;
+		for (int rank = 0; rank < shared; rank++)
+		{
+			total += 1.0 / (rank + 1);
+			cumulativeWeights[rank] = total;
+		}
+	}
+
+	public int getDocumentTypes()
+	{
+		return documentTypes;
+	}
+
+	public int getAttributeDefinitions()
+	{
+		return attributeDefinitions;
+	}
+
+	/**
+	 * The UUID of the definition at the given position; positions at or beyond
+	 * the number of definitions give UUIDs that have no definition.
+	 */
+	public String uuid(int index)
+	{
+		long mixed = mix(seed ^ index);
+		return new UUID(mixed, mix(mixed + index)).toString();
+	}
+
+	public void writeAttributeDefinitions(OutputStream output) throws IOException
+	{
+		try (JsonGenerator generator = jsonFactory.createGenerator(output, JsonEncoding.UTF8))
+		{
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			generator.writeStartArray();
+			for (int i = 0; i < attributeDefinitions; i++)
+			{
+				Random random = new Random(mix(seed + 31L * i));
+				String dataType = i < systemAttributes ? (i % 3 == 0 ? "DATE" : "STRING") : DATA_TYPES[random.nextInt(DATA_TYPES.length)];
+				generator.writeStartObject();
+				generator.writeStringField("uuid", uuid(i));
+				generator.writeStringField("name", (i < systemAttributes ? "System Attribute " : "Attribute ") + i);
+				generator.writeStringField("shortName", (i < systemAttributes ? "SYS_" : "ATTR_") + i);
+				generator.writeStringField("attributeDataType", dataType);
+				if (random.nextInt(5) == 0)
+				{
+					generator.writeStringField("defaultValue", "BOOLEAN".equals(dataType) ? "false" : "default " + (i % 20));
+				} else
+				{
+					generator.writeNullField("defaultValue");
+				}
+				generator.writeNumberField("length", "STRING".equals(dataType) ? 32 << random.nextInt(5) : 0);
+				generator.writeStringField("multivalueType", MULTIVALUE_TYPES[random.nextInt(MULTIVALUE_TYPES.length)]);
+				generator.writeStringField("fulltextUsage", FULLTEXT_USAGES[random.nextInt(FULLTEXT_USAGES.length)]);
+				generator.writeEndObject();
+			}
+			generator.writeEndArray();
+		}
+	}
+
+	public void writeDocumentTypes(OutputStream output) throws IOException
+	{
+		try (JsonGenerator generator = jsonFactory.createGenerator(output, JsonEncoding.UTF8))
+		{
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			generator.writeStartArray();
+			for (int i = 0; i < documentTypes; i++)
+			{
+				writeDocumentType(generator, i);
+			}
+			generator.writeEndArray();
+		}
+	}
+
+	private void writeDocumentType(JsonGenerator generator, int index) throws IOException
+	{
+		Random random = new Random(mix(seed - 17L * index));
+		generator.writeStartObject();
+		generator.writeStringField("uuid", new UUID(mix(seed + index), index).toString());
+		generator.writeStringField("name", "Document Class " + index);
+		generator.writeArrayFieldStart("allowedAttributeDefinitions");
+
+		Set<Integer> chosen = new HashSet<>(attributesPerType * 2);
+		for (int i = 0; i < systemAttributes; i++)
+		{
+			chosen.add(i);
+		}
+		for (int attempts = 0; chosen.size() < attributesPerType && attempts < attributesPerType * 20; attempts++)
+		{
+			chosen.add(systemAttributes + sampleShared(random));
+		}
+		// Only when nearly every definition is needed; the tail is too rare to hit by sampling
+		for (int attribute = systemAttributes; chosen.size() < attributesPerType; attribute++)
+		{
+			chosen.add(attribute);
+		}
+		for (int attribute : chosen)
+		{
+			int reference = random.nextDouble() < UNKNOWN_REFERENCE_RATE ? attributeDefinitions + random.nextInt(attributeDefinitions) : attribute;
+			generator.writeStartObject();
+			generator.writeStringField("attributeDefinitionUUID", uuid(reference));
+			generator.writeBooleanField("mandatory", attribute < systemAttributes ? attribute == 0 : random.nextInt(10) == 0);
+			generator.writeBooleanField("readonly", attribute < systemAttributes ? attribute % 4 == 1 : random.nextInt(20) == 0);
+			generator.writeEndObject();
+		}
+
+		generator.writeEndArray();
+		generator.writeEndObject();
+	}
+
+	private int sampleShared(Random random)
+	{
+		double target = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+		int position = Arrays.binarySearch(cumulativeWeights, target);
+		return position >= 0 ? position : -position - 1;
+	}
+
+	/**
+	 * Writes attribute_definitions.json and document_types.json to the directory.
+	 */
+	public void writeTo(Path directory) throws IOException
+	{
+		Files.createDirectories(directory);
+		try (OutputStream output = Files.newOutputStream(directory.resolve("attribute_definitions.json")))
+		{
+			writeAttributeDefinitions(output);
+		}
+		try (OutputStream output = Files.newOutputStream(directory.resolve("document_types.json")))
+		{
+			writeDocumentTypes(output);
+		}
+	}
+
+	// SplitMix64 finalizer, spreads neighbouring seeds over the whole range
+	private static long mix(long value)
+	{
+		value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+		value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+		return value ^ (value >>> 31);
+	}
+
+	/**
+	 * Usage: SyntheticContentModel documentTypes attributesPerType attributeDefinitions outputDirectory [seed]
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 4)
+		{
+			System.err.println("Usage: SyntheticContentModel documentTypes attributesPerType attributeDefinitions outputDirectory [seed]");
+			System.exit(1);
+		}
+		SyntheticContentModel model = new SyntheticContentModel(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+				args.length > 4 ? Long.parseLong(args[4]) : 42);
+		model.writeTo(Paths.get(args[3]));
+	}
+}
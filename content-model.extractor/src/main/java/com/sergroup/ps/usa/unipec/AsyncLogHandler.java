@@ -0,0 +1,214 @@
+package com.sergroup.ps.usa.unipec;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Log handler that hands records to one background thread through a bounded
+ * queue. The thread formats them in batches and appends them to a single log
+ * file per day shared by all classes, so logging threads never wait for file I/O.
+ *
+ * When the queue is full, records below WARNING are dropped and counted instead
+ * of blocking the caller; warnings and errors wait for space.
+ */
+class AsyncLogHandler extends Handler
+{
+	private static final int BATCH_SIZE = 512;
+	private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+	private final ArrayBlockingQueue<LogRecord> queue;
+	private final String directory;
+	private final String fileName;
+	private final Thread writerThread;
+	private final AtomicLong dropped = new AtomicLong();
+	private volatile boolean closed;
+
+	// Only used by the writer thread
+	private Writer writer;
+	private LocalDate currentDate;
+	private long cachedSecond = Long.MIN_VALUE;
+	private String cachedTimestamp;
+	private final ZoneId zone = ZoneId.systemDefault();
+
+	/**
+	 * @param fileName prefix of the daily files, which are named fileName_yyyy-MM-dd.log
+	 */
+	AsyncLogHandler(String directory, String fileName, int queueSize)
+	{
+		this.queue = new ArrayBlockingQueue<>(Math.max(16, queueSize));
+		this.directory = directory;
+		this.fileName = fileName;
+		writerThread = new Thread(this::run, "log-writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	@Override
+	public void publish(LogRecord record)
+	{
+		if (closed || !isLoggable(record))
+		{
+			return;
+		}
+		if (queue.offer(record))
+		{
+			return;
+		}
+		if (record.getLevel().intValue() < Level.WARNING.intValue())
+		{
+			dropped.incrementAndGet();
+			return;
+		}
+		try
+		{
+			queue.put(record);
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * The writer flushes the file whenever the queue runs empty, so there is
+	 * nothing to do here.
+	 */
+	@Override
+	public void flush()
+	{
+	}
+
+	/**
+	 * Stops accepting records and waits up to five seconds for the writer to
+	 * drain the queue and close the file.
+	 */
+	@Override
+	public void close()
+	{
+		closed = true;
+		try
+		{
+			writerThread.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void run()
+	{
+		List<LogRecord> batch = new ArrayList<>(BATCH_SIZE);
+		try
+		{
+			while (!closed || !queue.isEmpty())
+			{
+				LogRecord first = queue.poll(200, TimeUnit.MILLISECONDS);
+				if (first == null)
+				{
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch, BATCH_SIZE - 1);
+				writeBatch(batch);
+				batch.clear();
+			}
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		} finally
+		{
+			closeWriter();
+		}
+	}
+
+	private void writeBatch(List<LogRecord> batch)
+	{
+		try
+		{
+			for (LogRecord record : batch)
+			{
+				write(record.getMillis(), record.getLevel(), record.getLoggerName(), record.getMessage());
+			}
+			long droppedRecords = dropped.getAndSet(0);
+			if (droppedRecords > 0)
+			{
+				write(System.currentTimeMillis(), Level.WARNING, AsyncLogHandler.class.getName(), droppedRecords + " log records dropped, the log queue was full");
+			}
+			if (queue.isEmpty())
+			{
+				writer.flush();
+			}
+		} catch (IOException e)
+		{
+			reportError("Could not write log records", e, ErrorManager.WRITE_FAILURE);
+		}
+	}
+
+	private void write(long millis, Level level, String loggerName, String message) throws IOException
+	{
+		long second = Math.floorDiv(millis, 1000);
+		if (second != cachedSecond)
+		{
+			LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochSecond(second), zone);
+			if (!time.toLocalDate().equals(currentDate))
+			{
+				openFile(time.toLocalDate());
+			}
+			cachedSecond = second;
+			cachedTimestamp = TIMESTAMP.format(time);
+		}
+
+		String levelName = level.getLocalizedName();
+		writer.append('[').append(cachedTimestamp).append("] [").append(levelName);
+		for (int i = levelName.length(); i < 7; i++)
+		{
+			writer.append(' ');
+		}
+		writer.append("] [").append(loggerName == null ? "" : loggerName.substring(loggerName.lastIndexOf('.') + 1)).append("] ")
+				.append(message).append(System.lineSeparator());
+	}
+
+	private void openFile(LocalDate date) throws IOException
+	{
+		closeWriter();
+		Path path = Paths.get(directory, fileName + "_" + date + ".log");
+		Files.createDirectories(path.toAbsolutePath().getParent());
+		writer = Files.newBufferedWriter(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		currentDate = date;
+	}
+
+	private void closeWriter()
+	{
+		if (writer == null)
+		{
+			return;
+		}
+		try
+		{
+			writer.close();
+		} catch (IOException e)
+		{
+			reportError("Could not close log file", e, ErrorManager.CLOSE_FAILURE);
+		}
+		writer = null;
+		currentDate = null;
+		cachedSecond = Long.MIN_VALUE;
+	}
+}
@@ -1,14 +1,39 @@
 package com.sergroup.ps.usa.unipec;
 
-public class AttributeDefinition 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * The fields of an attribute definition that are rendered in the document
+ * class tables. The enumerated fields (data type, multivalue type, fulltext
+ * usage) are interned so every definition shares a single instance of each
+ * of their few values. The default value is free text and is not interned.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record AttributeDefinition(String uuid, String name, String shortName, String attributeDataType, String defaultValue, int length,
+		String multivalueType, String fulltextUsage)
 {
-    private String uuid;
-    private String name;
-    // Add other fields if needed
-    
-    // Getters and setters
-    public String getUuid() { return uuid; }
-    public void setUuid(String uuid) { this.uuid = uuid; }
-    public String getName() { return name; }
-    public void setName(String name) { this.name = name; }
-}
\ No newline at end of file
+	public AttributeDefinition
+	{
+		attributeDataType = intern(attributeDataType);
+		multivalueType = intern(multivalueType);
+		fulltextUsage = intern(fulltextUsage);
+	}
+
+	@JsonCreator
+	public static AttributeDefinition fromJson(@JsonProperty("uuid") String uuid, @JsonProperty("name") String name, @JsonProperty("shortName") String shortName,
+			@JsonProperty("attributeDataType") String attributeDataType, @JsonProperty("defaultValue") JsonNode defaultValue, @JsonProperty("length") int length,
+			@JsonProperty("multivalueType") String multivalueType, @JsonProperty("fulltextUsage") String fulltextUsage)
+	{
+		// The default value is not always a plain string, keep its text form as before
+		String defaultText = defaultValue == null || defaultValue.isNull() ? null : defaultValue.asText();
+		return new AttributeDefinition(uuid, name, shortName, attributeDataType, defaultText, length, multivalueType, fulltextUsage);
+	}
+
+	private static String intern(String value)
+	{
+		return value == null ? null : value.intern();
+	}
+}
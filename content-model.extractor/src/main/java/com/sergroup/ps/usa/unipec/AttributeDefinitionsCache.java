@@ -1,98 +1,124 @@
 package com.sergroup.ps.usa.unipec;
 
 import java.io.IOException;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
 import java.nio.file.Paths;
-import java.time.Duration;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+/**
+ * The attribute definitions of one organization, looked up by UUID or by
+ * their dense index while rendering.
+ */
 public class AttributeDefinitionsCache
 {
 	private static final Logger LOGGER = LoggingManager.getInstance().getLogger(AttributeDefinitionsCache.class);
-	private static final Map<String, JsonNode> attributeDefinitions = new HashMap<>();
 	private static final ObjectMapper mapper = new ObjectMapper();
-	private static String attributeDefinitionsPath;
+	private final UuidIndexMap<AttributeDefinition> attributeDefinitions = new UuidIndexMap<>();
+	private final ConfigurationManager config;
+	// Set when the definitions are served from the memory-mapped binary snapshot instead of the map
+	private volatile AttributeDefinitionsSnapshot snapshot;
 
-	public static void initialize(String jwt, String baseUrl) throws IOException, InterruptedException
+	public AttributeDefinitionsCache(ConfigurationManager config)
+	{
+		this.config = config;
+	}
+
+	/**
+	 * Starts fetching the attribute definitions with the given downloader and
+	 * loads them into the cache as soon as the snapshot is current.
+	 */
+	public CompletableFuture<Void> initializeAsync(SnapshotDownloader downloader, String jwt, String baseUrl, RunMetrics metrics)
 	{
 		LOGGER.info("Initializing attribute definitions cache");
 
 		// Get path from configuration
-		attributeDefinitionsPath = ConfigurationManager.getInstance().getProperty("attribute.definitions.path");
-
-		// Create directories if they don't exist
-		Files.createDirectories(Paths.get(attributeDefinitionsPath).getParent());
-
-		// Fetch from API and save to file
-		fetchAndSaveAttributeDefinitions(jwt, baseUrl);
+		String attributeDefinitionsPath = config.getProperty("attribute.definitions.path");
 
-		// Load from file into memory
-		loadAttributeDefinitionsFromFile();
+		// Fetch from API and save to file, according to the fetch policy
+		String attributesUrl = baseUrl + "attributeDefinitions";
+		return downloader.fetchAsync(attributesUrl, jwt, Paths.get(attributeDefinitionsPath), "attribute definitions", metrics).thenRun(() -> {
+					// Load from file into memory
+					long loadStart = System.nanoTime();
+					try
+					{
+						loadAttributeDefinitionsFromFile(attributeDefinitionsPath);
+					} catch (IOException e)
+					{
+						throw new UncheckedIOException(e);
+					} finally
+					{
+						metrics.recordPhase("load_attribute_definitions", loadStart);
+					}
+				});
 	}
 
-	private static void fetchAndSaveAttributeDefinitions(String jwt, String baseUrl) throws IOException, InterruptedException
+	void loadAttributeDefinitionsFromFile(String path) throws IOException
 	{
-		HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
-
-		String attributesUrl = baseUrl + "attributeDefinitions";
-		HttpRequest request = HttpRequest.newBuilder().uri(URI.create(attributesUrl)).header("Authorization", "Bearer " + jwt).header("accept", "application/json").GET().build();
-
-		HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+		attributeDefinitions.clear();
+		snapshot = null;
 
-		if (response.statusCode() == 200)
+		if (Boolean.parseBoolean(config.getProperty("attribute.definitions.binary", "true")))
 		{
-			// Save to configured path
-			Files.writeString(Paths.get(attributeDefinitionsPath), response.body());
-			LOGGER.info("Saved attribute definitions to: " + attributeDefinitionsPath);
-		} else
+			snapshot = AttributeDefinitionsSnapshot.openOrBuild(Paths.get(path));
+			if (snapshot != null)
+			{
+				return;
+			}
+		}
+
+		LOGGER.info("Loading attribute definitions from file: " + path);
+		try (MappingIterator<AttributeDefinition> definitions = mapper.readerFor(AttributeDefinition.class).readValues(Paths.get(path).toFile()))
 		{
-			throw new IOException("Failed to fetch attribute definitions. Status: " + response.statusCode());
+			while (definitions.hasNextValue())
+			{
+				AttributeDefinition definition = definitions.nextValue();
+				attributeDefinitions.put(definition.uuid(), definition);
+			}
 		}
+		LOGGER.info("Cached " + attributeDefinitions.size() + " attribute definitions from file");
 	}
 
-	private static void loadAttributeDefinitionsFromFile() throws IOException
+	public AttributeDefinition getAttributeDefinition(String uuid)
 	{
-		LOGGER.info("Loading attribute definitions from file: " + attributeDefinitionsPath);
-		String jsonContent = Files.readString(Paths.get(attributeDefinitionsPath));
-		JsonNode attributesArray = mapper.readTree(jsonContent);
+		AttributeDefinitionsSnapshot current = snapshot;
+		return current != null ? current.get(uuid) : attributeDefinitions.get(uuid);
+	}
 
-		attributeDefinitions.clear();
-		for (JsonNode attr : attributesArray)
-		{
-			attributeDefinitions.put(attr.get("uuid").asText(), attr);
-		}
-		LOGGER.info("Cached " + attributeDefinitions.size() + " attribute definitions from file");
+	/**
+	 * @return a dense index (0 to getCacheSize() - 1) identifying the definition, or -1 if it is unknown
+	 */
+	public int indexOf(String uuid)
+	{
+		AttributeDefinitionsSnapshot current = snapshot;
+		return current != null ? current.indexOf(uuid) : attributeDefinitions.indexOf(uuid);
 	}
 
-	public static JsonNode getAttributeDefinition(String uuid)
+	public AttributeDefinition getAttributeDefinition(int index)
 	{
-		return attributeDefinitions.getOrDefault(uuid, null);
+		AttributeDefinitionsSnapshot current = snapshot;
+		return current != null ? current.valueAt(index) : attributeDefinitions.valueAt(index);
 	}
 
-	public static String getAttributeName(String uuid)
+	public String getAttributeName(String uuid)
 	{
-		JsonNode attr = attributeDefinitions.get(uuid);
-		return attr != null ? attr.get("name").asText() : "Unknown (" + uuid + ")";
+		AttributeDefinition attr = getAttributeDefinition(uuid);
+		return attr != null ? attr.name() : "Unknown (" + uuid + ")";
 	}
 
 	// Helper method to check if an attribute exists
-	public static boolean hasAttribute(String uuid)
+	public boolean hasAttribute(String uuid)
 	{
-		return attributeDefinitions.containsKey(uuid);
+		return getAttributeDefinition(uuid) != null;
 	}
 
 	// Helper method to get total number of cached attributes
-	public static int getCacheSize()
+	public int getCacheSize()
 	{
-		return attributeDefinitions.size();
+		AttributeDefinitionsSnapshot current = snapshot;
+		return current != null ? current.size() : attributeDefinitions.size();
 	}
 }
\ No newline at end of file
@@ -0,0 +1,355 @@
+package com.sergroup.ps.usa.unipec;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Binary copy of the attribute definitions snapshot, written next to the JSON
+ * file and opened as a memory-mapped file. Definitions are decoded only when
+ * first looked up, so opening it costs almost nothing regardless of size.
+ *
+ * The file name carries the modification time and size of the JSON it was
+ * built from. A rebuild therefore writes a new file instead of replacing one
+ * that a previous run in the same JVM may still have mapped, which Windows
+ * does not allow. Snapshots of older JSON files are deleted when possible.
+ *
+ * Layout (big-endian):
+ * <pre>
+ * header  int magic, int version, int count, int reserved, long jsonSize, long jsonModified
+ * index   count x (long mostSignificantBits, long leastSignificantBits, int recordOffset), sorted by UUID
+ * records per record: uuid, name, shortName, attributeDataType, defaultValue, int length, multivalueType, fulltextUsage
+ *         where every string is an int byte length (-1 for null) followed by UTF-8 bytes
+ * </pre>
+ */
+public final class AttributeDefinitionsSnapshot
+{
+	private static final Logger LOGGER = LoggingManager.getInstance().getLogger(AttributeDefinitionsSnapshot.class);
+	private static final ObjectMapper mapper = new ObjectMapper();
+	private static final int MAGIC = 0x41444231; // "ADB1"
+	// 2: upper case UUIDs are no longer stored as canonical
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 32;
+	private static final int INDEX_ENTRY_SIZE = 20;
+
+	private final MappedByteBuffer buffer;
+	private final int count;
+	private final int recordsStart;
+	private final AtomicReferenceArray<AttributeDefinition> decoded;
+
+	private AttributeDefinitionsSnapshot(MappedByteBuffer buffer)
+	{
+		this.buffer = buffer;
+		this.count = buffer.getInt(8);
+		this.recordsStart = HEADER_SIZE + count * INDEX_ENTRY_SIZE;
+		this.decoded = new AtomicReferenceArray<>(count);
+	}
+
+	/**
+	 * @return the binary snapshot for the current version of the JSON file
+	 */
+	public static Path snapshotPathFor(Path jsonPath) throws IOException
+	{
+		return snapshotPathFor(jsonPath, Files.size(jsonPath), Files.getLastModifiedTime(jsonPath).toMillis());
+	}
+
+	private static Path snapshotPathFor(Path jsonPath, long jsonSize, long jsonModified)
+	{
+		return jsonPath.resolveSibling(baseName(jsonPath) + "." + Long.toHexString(jsonModified) + "-" + Long.toHexString(jsonSize) + ".bin");
+	}
+
+	private static String baseName(Path jsonPath)
+	{
+		String fileName = jsonPath.getFileName().toString();
+		return fileName.endsWith(".json") ? fileName.substring(0, fileName.length() - 5) : fileName;
+	}
+
+	/**
+	 * Opens the binary snapshot for the given JSON file, building it first if it
+	 * is missing or damaged.
+	 *
+	 * @return the snapshot, or null if the JSON contains keys that are not
+	 *         canonical UUIDs and therefore cannot be indexed
+	 */
+	public static AttributeDefinitionsSnapshot openOrBuild(Path jsonPath) throws IOException
+	{
+		long jsonSize = Files.size(jsonPath);
+		long jsonModified = Files.getLastModifiedTime(jsonPath).toMillis();
+		Path binaryPath = snapshotPathFor(jsonPath, jsonSize, jsonModified);
+
+		if (Files.exists(binaryPath))
+		{
+			AttributeDefinitionsSnapshot snapshot = open(binaryPath);
+			if (snapshot != null && snapshot.buffer.getLong(16) == jsonSize && snapshot.buffer.getLong(24) == jsonModified)
+			{
+				LOGGER.info("Opened binary attribute definitions snapshot " + binaryPath + " with " + snapshot.count + " definitions");
+				return snapshot;
+			}
+			LOGGER.info("Binary attribute definitions snapshot " + binaryPath + " is damaged, rebuilding");
+		}
+
+		if (!build(jsonPath, binaryPath, jsonSize, jsonModified))
+		{
+			return null;
+		}
+		AttributeDefinitionsSnapshot snapshot = open(binaryPath);
+		if (snapshot == null)
+		{
+			throw new IOException("Binary attribute definitions snapshot " + binaryPath + " could not be read back after building it");
+		}
+		LOGGER.info("Built binary attribute definitions snapshot " + binaryPath + " with " + snapshot.count + " definitions");
+		deleteOtherSnapshots(jsonPath, binaryPath);
+		return snapshot;
+	}
+
+	// Returns null unless the header and the index fit the file, so a damaged file is rebuilt rather than read
+	private static AttributeDefinitionsSnapshot open(Path binaryPath) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(binaryPath, StandardOpenOption.READ))
+		{
+			long size = channel.size();
+			if (size < HEADER_SIZE || size > Integer.MAX_VALUE)
+			{
+				return null;
+			}
+			// The mapping stays valid after the channel is closed
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+			{
+				return null;
+			}
+			int count = buffer.getInt(8);
+			if (count < 0 || HEADER_SIZE + (long) count * INDEX_ENTRY_SIZE > size)
+			{
+				return null;
+			}
+			long recordsSize = size - HEADER_SIZE - (long) count * INDEX_ENTRY_SIZE;
+			for (int i = 0; i < count; i++)
+			{
+				int offset = buffer.getInt(HEADER_SIZE + i * INDEX_ENTRY_SIZE + 16);
+				if (offset < 0 || offset >= recordsSize)
+				{
+					return null;
+				}
+			}
+			return new AttributeDefinitionsSnapshot(buffer);
+		}
+	}
+
+	private static void deleteOtherSnapshots(Path jsonPath, Path current)
+	{
+		String prefix = baseName(jsonPath) + ".";
+		DirectoryStream.Filter<Path> snapshots = file -> file.getFileName().toString().startsWith(prefix) && file.getFileName().toString().endsWith(".bin");
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(current.toAbsolutePath().getParent(), snapshots))
+		{
+			for (Path file : files)
+			{
+				if (!file.getFileName().equals(current.getFileName()))
+				{
+					try
+					{
+						Files.deleteIfExists(file);
+					} catch (IOException e)
+					{
+						// Still mapped on Windows by a snapshot opened earlier in this JVM, removed by a later run
+						LOGGER.fine("Could not delete old binary attribute definitions snapshot " + file + ": " + e.getMessage());
+					}
+				}
+			}
+		} catch (IOException e)
+		{
+			LOGGER.fine("Could not look for old binary attribute definitions snapshots: " + e.getMessage());
+		}
+	}
+
+	private static boolean build(Path jsonPath, Path binaryPath, long jsonSize, long jsonModified) throws IOException
+	{
+		// Later duplicates replace earlier ones, as they do in the in-memory map
+		UuidIndexMap<AttributeDefinition> definitions = new UuidIndexMap<>();
+		try (MappingIterator<AttributeDefinition> iterator = mapper.readerFor(AttributeDefinition.class).readValues(jsonPath.toFile()))
+		{
+			while (iterator.hasNextValue())
+			{
+				AttributeDefinition definition = iterator.nextValue();
+				if (definition.uuid() == null || UuidIndexMap.parseMostSignificantBits(definition.uuid()) == UuidIndexMap.INVALID
+						|| UuidIndexMap.parseLeastSignificantBits(definition.uuid()) == UuidIndexMap.INVALID)
+				{
+					LOGGER.info("Attribute definition UUID '" + definition.uuid() + "' is not canonical, not using a binary snapshot");
+					return false;
+				}
+				definitions.put(definition.uuid(), definition);
+			}
+		}
+
+		List<AttributeDefinition> sorted = new ArrayList<>(definitions.size());
+		for (int i = 0; i < definitions.size(); i++)
+		{
+			sorted.add(definitions.valueAt(i));
+		}
+		sorted.sort(Comparator.comparingLong((AttributeDefinition definition) -> UuidIndexMap.parseMostSignificantBits(definition.uuid()))
+				.thenComparingLong(definition -> UuidIndexMap.parseLeastSignificantBits(definition.uuid())));
+
+		ByteArrayOutputStream records = new ByteArrayOutputStream();
+		DataOutputStream recordsOut = new DataOutputStream(records);
+		int[] offsets = new int[sorted.size()];
+		for (int i = 0; i < sorted.size(); i++)
+		{
+			AttributeDefinition definition = sorted.get(i);
+			offsets[i] = recordsOut.size();
+			writeString(recordsOut, definition.uuid());
+			writeString(recordsOut, definition.name());
+			writeString(recordsOut, definition.shortName());
+			writeString(recordsOut, definition.attributeDataType());
+			writeString(recordsOut, definition.defaultValue());
+			recordsOut.writeInt(definition.length());
+			writeString(recordsOut, definition.multivalueType());
+			writeString(recordsOut, definition.fulltextUsage());
+		}
+
+		// Write to a temporary file first so readers never map a partially written snapshot
+		Path tempPath = Paths.get(binaryPath.toString() + ".part");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath), 64 * 1024)))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(sorted.size());
+			out.writeInt(0);
+			out.writeLong(jsonSize);
+			out.writeLong(jsonModified);
+			for (int i = 0; i < sorted.size(); i++)
+			{
+				String uuid = sorted.get(i).uuid();
+				out.writeLong(UuidIndexMap.parseMostSignificantBits(uuid));
+				out.writeLong(UuidIndexMap.parseLeastSignificantBits(uuid));
+				out.writeInt(offsets[i]);
+			}
+			records.writeTo(out);
+		}
+		Files.move(tempPath, binaryPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return true;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException
+	{
+		if (value == null)
+		{
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	public AttributeDefinition get(String uuid)
+	{
+		int index = indexOf(uuid);
+		return index >= 0 ? valueAt(index) : null;
+	}
+
+	/**
+	 * @return the position of the UUID in the sorted index, or -1
+	 */
+	public int indexOf(String uuid)
+	{
+		if (uuid == null)
+		{
+			return -1;
+		}
+		long msb = UuidIndexMap.parseMostSignificantBits(uuid);
+		long lsb = msb == UuidIndexMap.INVALID ? 0 : UuidIndexMap.parseLeastSignificantBits(uuid);
+		if (msb == UuidIndexMap.INVALID || lsb == UuidIndexMap.INVALID)
+		{
+			return -1;
+		}
+
+		int low = 0;
+		int high = count - 1;
+		while (low <= high)
+		{
+			int mid = (low + high) >>> 1;
+			int position = HEADER_SIZE + mid * INDEX_ENTRY_SIZE;
+			int compare = Long.compare(buffer.getLong(position), msb);
+			if (compare == 0)
+			{
+				compare = Long.compare(buffer.getLong(position + 8), lsb);
+			}
+			if (compare < 0)
+			{
+				low = mid + 1;
+			} else if (compare > 0)
+			{
+				high = mid - 1;
+			} else
+			{
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	public AttributeDefinition valueAt(int index)
+	{
+		AttributeDefinition definition = decoded.get(index);
+		if (definition == null)
+		{
+			// Two threads may decode the same record; both produce equal values
+			definition = decode(recordsStart + buffer.getInt(HEADER_SIZE + index * INDEX_ENTRY_SIZE + 16));
+			decoded.set(index, definition);
+		}
+		return definition;
+	}
+
+	public int size()
+	{
+		return count;
+	}
+
+	private AttributeDefinition decode(int position)
+	{
+		int[] cursor = { position };
+		String uuid = readString(cursor);
+		String name = readString(cursor);
+		String shortName = readString(cursor);
+		String attributeDataType = readString(cursor);
+		String defaultValue = readString(cursor);
+		int length = buffer.getInt(cursor[0]);
+		cursor[0] += 4;
+		String multivalueType = readString(cursor);
+		String fulltextUsage = readString(cursor);
+		return new AttributeDefinition(uuid, name, shortName, attributeDataType, defaultValue, length, multivalueType, fulltextUsage);
+	}
+
+	private String readString(int[] cursor)
+	{
+		int length = buffer.getInt(cursor[0]);
+		cursor[0] += 4;
+		if (length < 0)
+		{
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		// Absolute bulk get leaves the shared buffer's position untouched, so lookups are thread-safe
+		buffer.get(cursor[0], bytes);
+		cursor[0] += length;
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
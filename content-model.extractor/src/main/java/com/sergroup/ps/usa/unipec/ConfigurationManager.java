@@ -15,10 +15,21 @@ public class ConfigurationManager
 	private static final Logger LOGGER = Logger.getLogger(ConfigurationManager.class.getName());
 	private static Properties properties;
 	private static ConfigurationManager instance;
+	// Set on the view of one organization profile, whose org.<name>.* properties override the shared ones
+	private final String profileName;
+	private final String profilePrefix;
 
 	private ConfigurationManager()
 	{
 		loadConfiguration();
+		profileName = null;
+		profilePrefix = null;
+	}
+
+	private ConfigurationManager(String profileName)
+	{
+		this.profileName = profileName;
+		this.profilePrefix = "org." + profileName + ".";
 	}
 
 	public static ConfigurationManager getInstance()
@@ -30,6 +41,40 @@ public class ConfigurationManager
 		return instance;
 	}
 
+	/**
+	 * The organization profiles listed in the orgs property, for batch runs
+	 * over several organizations in one process.
+	 */
+	public List<String> getProfileNames()
+	{
+		List<String> names = new ArrayList<>();
+		for (String name : getInstance().getProperty("orgs", "").split(","))
+		{
+			if (!name.isBlank())
+			{
+				names.add(name.trim());
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * A view of the configuration for one organization: each property is read
+	 * from org.<name>.<property> if that is set, otherwise from <property>.
+	 */
+	public ConfigurationManager forProfile(String name)
+	{
+		return new ConfigurationManager(name);
+	}
+
+	/**
+	 * @return the organization profile of this view, or null for the shared configuration
+	 */
+	public String getProfileName()
+	{
+		return profileName;
+	}
+
 	private void loadConfiguration()
 	{
 		properties = new Properties();
@@ -76,12 +121,39 @@ public class ConfigurationManager
 
 	public String getProperty(String key)
 	{
+		if (profilePrefix != null)
+		{
+			String value = properties.getProperty(profilePrefix + key);
+			if (value != null)
+			{
+				return value;
+			}
+		}
 		return properties.getProperty(key);
 	}
 
 	public String getProperty(String key, String defaultValue)
 	{
-		return properties.getProperty(key, defaultValue);
+		String value = getProperty(key);
+		return value != null ? value : defaultValue;
+	}
+
+	public int getIntProperty(String key, int defaultValue)
+	{
+		String value = getProperty(key);
+		if (value == null || value.isBlank())
+		{
+			return defaultValue;
+		}
+
+		try
+		{
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e)
+		{
+			LOGGER.warning("Invalid integer value '" + value + "' for property " + key + ", using default " + defaultValue);
+			return defaultValue;
+		}
 	}
 
 	public void validateRequiredProperties(String... requiredProps)
@@ -98,7 +170,7 @@ public class ConfigurationManager
 
 		if (!missingProps.isEmpty())
 		{
-			String error = "Missing required properties: " + String.join(", ", missingProps);
+			String error = "Missing required properties" + (profileName != null ? " for organization " + profileName : "") + ": " + String.join(", ", missingProps);
 			LOGGER.severe(error);
 			throw new IllegalStateException(error);
 		}
@@ -0,0 +1,276 @@
+package com.sergroup.ps.usa.unipec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Daemon mode: refreshes the content model on a schedule and serves the
+ * generated site from memory with an embedded HTTP server.
+ *
+ * After each successful refresh the output directory is loaded into a new
+ * SiteCache, which then replaces the served one in a single reference swap.
+ * A failed refresh keeps serving the previous version.
+ */
+public class ContentModelServer
+{
+	private static final Logger LOGGER = LoggingManager.getInstance().getLogger(ContentModelServer.class);
+	private static final AtomicReference<SiteCache> site = new AtomicReference<>(SiteCache.empty());
+	private static String outputDirectory;
+
+	public static void main(String[] args)
+	{
+		ConfigurationManager config = ConfigurationManager.getInstance();
+		outputDirectory = config.getProperty("output.directory", "output");
+		int port = config.getIntProperty("server.port", 8080);
+		int threads = Math.max(1, config.getIntProperty("server.threads", 16));
+		int refreshMinutes = Math.max(1, config.getIntProperty("server.refresh.minutes", 60));
+
+		try
+		{
+			// Serve what the last run left on disk while the first refresh is running
+			serve(SiteCache.load(outputDirectory, SiteCache.empty()));
+		} catch (IOException e)
+		{
+			LOGGER.info("No previously generated site to serve yet: " + e.getMessage());
+		}
+
+		try
+		{
+			start(new InetSocketAddress(port), threads);
+			LOGGER.info("Serving " + outputDirectory + " on port " + port + " with " + threads + " worker threads");
+		} catch (IOException e)
+		{
+			LOGGER.severe("Could not start HTTP server on port " + port + ": " + e.getMessage());
+			throw new RuntimeException(e);
+		}
+
+		// The scheduler thread is not a daemon thread and keeps the JVM running
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "content-model-refresh"));
+		scheduler.scheduleWithFixedDelay(ContentModelServer::refresh, 0, refreshMinutes, TimeUnit.MINUTES);
+		LOGGER.info("Refreshing the content model every " + refreshMinutes + " minutes");
+	}
+
+	/**
+	 * Starts serving the current SiteCache on the given address.
+	 */
+	static HttpServer start(InetSocketAddress address, int threads) throws IOException
+	{
+		HttpServer server = HttpServer.create(address, 0);
+		server.createContext("/", ContentModelServer::handle);
+		server.setExecutor(Executors.newFixedThreadPool(threads, daemonThreads("http-worker")));
+		server.start();
+		return server;
+	}
+
+	/**
+	 * Replaces the served site as a whole.
+	 */
+	static void serve(SiteCache next)
+	{
+		site.set(next);
+	}
+
+	/**
+	 * Evaluates If-None-Match as a list of entity tags, compared weakly as
+	 * RFC 9110 requires for this header, so W/"x" matches "x" as well.
+	 */
+	static boolean matchesIfNoneMatch(List<String> headerValues, String etag)
+	{
+		if (headerValues == null)
+		{
+			return false;
+		}
+		String opaqueTag = etag.startsWith("W/") ? etag.substring(2) : etag;
+		for (String headerValue : headerValues)
+		{
+			for (String candidate : headerValue.split(","))
+			{
+				candidate = candidate.trim();
+				if (candidate.equals("*"))
+				{
+					return true;
+				}
+				if (candidate.startsWith("W/"))
+				{
+					candidate = candidate.substring(2);
+				}
+				if (candidate.equals(opaqueTag))
+				{
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Evaluates Accept-Encoding: gzip is used if its own quality, or failing
+	 * that the quality of *, is above 0. Other codings such as x-gzip do not
+	 * count, because the response is labelled Content-Encoding: gzip.
+	 */
+	static boolean acceptsGzip(List<String> headerValues)
+	{
+		if (headerValues == null)
+		{
+			return false;
+		}
+		double gzipQuality = -1;
+		double anyQuality = -1;
+		for (String headerValue : headerValues)
+		{
+			for (String element : headerValue.split(","))
+			{
+				String[] parameters = element.split(";");
+				String coding = parameters[0].trim().toLowerCase(Locale.ROOT);
+				double quality = 1;
+				for (int i = 1; i < parameters.length; i++)
+				{
+					String parameter = parameters[i].trim();
+					if (parameter.length() > 2 && (parameter.charAt(0) == 'q' || parameter.charAt(0) == 'Q') && parameter.charAt(1) == '=')
+					{
+						quality = parseQuality(parameter.substring(2).trim());
+					}
+				}
+				if (coding.equals("gzip"))
+				{
+					gzipQuality = Math.max(gzipQuality, quality);
+				} else if (coding.equals("*"))
+				{
+					anyQuality = Math.max(anyQuality, quality);
+				}
+			}
+		}
+		return (gzipQuality >= 0 ? gzipQuality : anyQuality) > 0;
+	}
+
+	// A malformed weight disables the coding rather than enabling it
+	private static double parseQuality(String value)
+	{
+		try
+		{
+			double quality = Double.parseDouble(value);
+			return quality >= 0 && quality <= 1 ? quality : 0;
+		} catch (NumberFormatException e)
+		{
+			return 0;
+		}
+	}
+
+	private static void refresh()
+	{
+		try
+		{
+			LOGGER.info("Refreshing content model");
+			if (!DocumentTypesFetcher.refresh())
+			{
+				LOGGER.warning("Page generation failed, still serving the previous version");
+				return;
+			}
+			SiteCache next = SiteCache.load(outputDirectory, site.get());
+			serve(next);
+			LOGGER.info("Now serving " + next.size() + " pages");
+		} catch (Exception e)
+		{
+			// Never let an exception escape, it would cancel the schedule
+			LOGGER.severe("Refresh failed, still serving the previous version: " + e);
+		}
+	}
+
+	private static void handle(HttpExchange exchange) throws IOException
+	{
+		try (exchange)
+		{
+			String method = exchange.getRequestMethod();
+			if (!"GET".equals(method) && !"HEAD".equals(method))
+			{
+				exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+
+			SiteCache.Page page = site.get().get(pagePath(exchange.getRequestURI()));
+			if (page == null)
+			{
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+
+			boolean gzip = page.gzipContent() != null && acceptsGzip(exchange.getRequestHeaders().get("Accept-Encoding"));
+			// Each representation has its own strong validator
+			String etag = gzip ? page.gzipEtag() : page.etag();
+
+			Headers headers = exchange.getResponseHeaders();
+			headers.set("Content-Type", page.contentType());
+			headers.set("ETag", etag);
+			// Sent on 200 and 304 alike: the URL has a gzip and an identity representation
+			headers.set("Vary", "Accept-Encoding");
+			// Assets are fingerprinted, everything else must be revalidated with the ETag
+			headers.set("Cache-Control", exchange.getRequestURI().getPath().startsWith("/assets/") ? "public, max-age=31536000, immutable" : "no-cache");
+
+			if (matchesIfNoneMatch(exchange.getRequestHeaders().get("If-None-Match"), etag))
+			{
+				if (gzip)
+				{
+					headers.set("Content-Encoding", "gzip");
+				}
+				exchange.sendResponseHeaders(304, -1);
+				return;
+			}
+
+			byte[] body = page.content();
+			if (gzip)
+			{
+				body = page.gzipContent();
+				headers.set("Content-Encoding", "gzip");
+			}
+
+			if ("HEAD".equals(method))
+			{
+				headers.set("Content-Length", String.valueOf(body.length));
+				exchange.sendResponseHeaders(200, -1);
+				return;
+			}
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream output = exchange.getResponseBody())
+			{
+				output.write(body);
+			}
+		}
+	}
+
+	// Maps a request URI to a path relative to the output directory
+	private static String pagePath(URI uri)
+	{
+		String path = uri.getPath();
+		if (path == null || path.isEmpty() || path.endsWith("/"))
+		{
+			path = (path == null ? "" : path) + "index.html";
+		}
+		return path.startsWith("/") ? path.substring(1) : path;
+	}
+
+	private static ThreadFactory daemonThreads(String prefix)
+	{
+		AtomicInteger counter = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
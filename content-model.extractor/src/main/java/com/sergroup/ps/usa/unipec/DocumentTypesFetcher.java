@@ -1,41 +1,57 @@
 package com.sergroup.ps.usa.unipec;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Logger;
 
+/**
+ * Fetches the content model of one organization and generates its pages.
+ * {@link #main} and {@link #refresh()} run the organization of the shared
+ * configuration; {@link MultiOrgRunner} runs one instance per organization
+ * profile.
+ */
 public class DocumentTypesFetcher
 {
 	private static final Logger LOGGER = LoggingManager.getInstance().getLogger(DocumentTypesFetcher.class);
 	private static final ObjectMapper mapper = new ObjectMapper();
-	private static String baseUrl;
-	private static String customerName;
-	private static String userName;
-	private static String password;
-	private static String outputJsonPath;
-	private static HttpClient httpClient;
-
-	static
-	{
-		initializeConfiguration();
-		httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
-	}
+	private static DocumentTypesFetcher defaultFetcher;
+	private final ConfigurationManager config;
+	// Tells the organizations of a batch run apart in the shared log
+	private final String logPrefix;
+	private final String baseUrl;
+	private final String customerName;
+	private final String userName;
+	private final String password;
+	private final String outputJsonPath;
+	private final String attributeDefinitionsPath;
+	private final boolean pipelined;
+	// Only the first shard of a sharded run writes the change report
+	private final boolean writesChangeReport;
+	private final SnapshotDownloader downloader;
+	private final AttributeDefinitionsCache attributeDefinitionsCache;
+	private final JsonToHtmlTableConverter converter;
 
-	private static void initializeConfiguration() 
+	public DocumentTypesFetcher(ConfigurationManager config)
 	{
-	    ConfigurationManager config = ConfigurationManager.getInstance();
-	    
-	    // Validate required properties for DocumentTypesFetcher
-	    config.validateRequiredProperties("api.baseUrl","api.customerName","api.userName","api.password","input.json.path");
+	    this.config = config;
+	    logPrefix = config.getProfileName() != null ? "[" + config.getProfileName() + "] " : "";
+
+	    // Validate required properties for DocumentTypesFetcher, credentials are not needed when rendering offline
+	    downloader = new SnapshotDownloader(config);
+	    if (downloader.getFetchPolicy() == FetchPolicy.OFFLINE)
+	    {
+	        config.validateRequiredProperties("api.baseUrl","input.json.path","attribute.definitions.path");
+	    } else
+	    {
+	        config.validateRequiredProperties("api.baseUrl","api.customerName","api.userName","api.password","input.json.path","attribute.definitions.path");
+	    }
 
 	    // Load configuration values
 	    baseUrl = config.getProperty("api.baseUrl");
@@ -43,35 +59,188 @@ public class DocumentTypesFetcher
 	    userName = config.getProperty("api.userName");
 	    password = config.getProperty("api.password");
 	    outputJsonPath = config.getProperty("input.json.path");
+	    attributeDefinitionsPath = config.getProperty("attribute.definitions.path");
+	    pipelined = Boolean.parseBoolean(config.getProperty("fetch.pipelined", "false"));
+	    writesChangeReport = config.getIntProperty("shard.index", 0) == 0;
 
 	    // Log configuration (mask password)
-	    LOGGER.info("Configuration loaded:");
-	    LOGGER.info("Base URL: " + baseUrl);
-	    LOGGER.info("Customer Name: " + customerName);
-	    LOGGER.info("User Name: " + userName);
-	    LOGGER.info("Output JSON Path: " + outputJsonPath);
+	    LOGGER.info(logPrefix + "Configuration loaded:");
+	    LOGGER.info(logPrefix + "Base URL: " + baseUrl);
+	    LOGGER.info(logPrefix + "Customer Name: " + customerName);
+	    LOGGER.info(logPrefix + "User Name: " + userName);
+	    LOGGER.info(logPrefix + "Output JSON Path: " + outputJsonPath);
+	    LOGGER.info(logPrefix + "Fetch policy: " + downloader);
+
+	    attributeDefinitionsCache = new AttributeDefinitionsCache(config);
+	    converter = new JsonToHtmlTableConverter(config, attributeDefinitionsCache);
 	}
 
 	public static void main(String[] args)
 	{
+		boolean success = false;
 		try
 		{
-			String jwt = login();
-			
-			AttributeDefinitionsCache.initialize(jwt, baseUrl); // Initialize attribute definitions cache before processing documents
-			fetchAndSaveDocumentTypes(jwt); // Pass the JWT token fetchAndSaveDocumentTypes
-			JsonToHtmlTableConverter.process(); 
-
+			success = refresh();
 		} catch (Exception e)
 		{
 			LOGGER.severe("Error in main process: " + e.getMessage());
 			e.printStackTrace();
 		}
+		if (!success)
+		{
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Runs the organization of the shared configuration.
+	 *
+	 * @return whether all pages were generated
+	 */
+	public static boolean refresh() throws IOException, InterruptedException
+	{
+		DocumentTypesFetcher fetcher;
+		synchronized (DocumentTypesFetcher.class)
+		{
+			if (defaultFetcher == null)
+			{
+				defaultFetcher = new DocumentTypesFetcher(ConfigurationManager.getInstance());
+			}
+			fetcher = defaultFetcher;
+		}
+		return fetcher.run(null);
+	}
+
+	/**
+	 * Fetches the snapshots according to the fetch policy, writes the change
+	 * report and regenerates the pages.
+	 *
+	 * @param renderPool shared render threads, or null to use a pool of render.threads for this run
+	 * @return whether all pages were generated
+	 */
+	public boolean run(ExecutorService renderPool) throws IOException, InterruptedException
+	{
+		RunMetrics metrics = new RunMetrics(config);
+		boolean success = false;
+		try
+		{
+			String jwt = null;
+			if (downloader.requiresServer(Paths.get(outputJsonPath), Paths.get(attributeDefinitionsPath)))
+			{
+				long loginStart = System.nanoTime();
+				jwt = login();
+				metrics.recordPhase("login", loginStart);
+			} else
+			{
+				LOGGER.info(logPrefix + "Using saved snapshots, skipping login");
+			}
+
+			// Fetch both snapshots concurrently; the attribute definitions cache must be loaded before processing documents
+			CompletableFuture<Void> attributeDefinitions = attributeDefinitionsCache.initializeAsync(downloader, jwt, baseUrl, metrics);
+			if (pipelined)
+			{
+				CompletableFuture<SnapshotDownloader.SnapshotStream> documentTypes = openDocumentTypesAsync(jwt, metrics);
+				try
+				{
+					SnapshotDownloader.awaitAll(attributeDefinitions, documentTypes);
+				} catch (IOException e)
+				{
+					// Drop a download that has already started, it cannot be rendered without the attribute definitions
+					documentTypes.thenAccept(DocumentTypesFetcher::discard);
+					throw e;
+				}
+				// Null when the saved snapshot is current, then the pages are rendered from the file as usual
+				SnapshotDownloader.SnapshotStream stream = documentTypes.join();
+				if (stream != null)
+				{
+					success = processWhileDownloading(renderPool, stream, metrics);
+					compareSnapshots(metrics);
+					return success;
+				}
+			} else
+			{
+				CompletableFuture<Void> documentTypes = fetchAndSaveDocumentTypesAsync(jwt, metrics);
+				SnapshotDownloader.awaitAll(attributeDefinitions, documentTypes);
+			}
+
+			compareSnapshots(metrics);
+			success = converter.process(renderPool, null, metrics);
+			return success;
+		} finally
+		{
+			metrics.write(success);
+		}
+	}
+
+	SnapshotDownloader getDownloader()
+	{
+		return downloader;
+	}
+
+	AttributeDefinitionsCache getAttributeDefinitions()
+	{
+		return attributeDefinitionsCache;
+	}
+
+	JsonToHtmlTableConverter getConverter()
+	{
+		return converter;
+	}
+
+	/**
+	 * Renders the pages while the document types are still downloading. The
+	 * snapshot is only replaced once the pages were generated from the complete
+	 * response; otherwise the download is discarded and the previous snapshot kept.
+	 */
+	private boolean processWhileDownloading(ExecutorService renderPool, SnapshotDownloader.SnapshotStream stream, RunMetrics metrics) throws IOException
+	{
+		try (stream)
+		{
+			if (!converter.process(renderPool, stream, metrics))
+			{
+				return false;
+			}
+			stream.complete();
+			return true;
+		}
+	}
+
+	private static void discard(SnapshotDownloader.SnapshotStream stream)
+	{
+		if (stream == null)
+		{
+			return;
+		}
+		try
+		{
+			stream.close();
+		} catch (IOException e)
+		{
+			LOGGER.warning("Could not discard document types download: " + e.getMessage());
+		}
+	}
+
+	// A failed comparison only costs the change report, not the pages
+	private void compareSnapshots(RunMetrics metrics)
+	{
+		if (!writesChangeReport)
+		{
+			return;
+		}
+		long diffStart = System.nanoTime();
+		try
+		{
+			SnapshotDiff.run(config);
+		} catch (IOException e)
+		{
+			LOGGER.warning(logPrefix + "Could not compare snapshots with the previous run: " + e.getMessage());
+		}
+		metrics.recordPhase("diff", diffStart);
 	}
 
-	private static String login() throws IOException, InterruptedException 
+	String login() throws IOException, InterruptedException 
 	{
-	    LOGGER.info("Attempting to login...");
+	    LOGGER.info(logPrefix + "Attempting to login...");
 	    
 	    String loginUrl = baseUrl + "login";
 	    String loginJson = mapper.writeValueAsString(Map.of("customerName", customerName,"userName", userName,"password", password));
@@ -87,7 +256,7 @@ public class DocumentTypesFetcher
 
 	    HttpRequestLogger.logRequest(loginRequest, loginJson);
 
-	    HttpResponse<String> response = httpClient.send(loginRequest, HttpResponse.BodyHandlers.ofString());
+	    HttpResponse<String> response = HttpClientProvider.getClient().send(loginRequest, HttpResponse.BodyHandlers.ofString());
 
 	    LOGGER.info("Response status code: " + response.statusCode());
 	    LOGGER.finer("Response headers: " + response.headers().map());
@@ -97,7 +266,7 @@ public class DocumentTypesFetcher
 	    {
 	        String errorMsg = "Login failed with status code: " + response.statusCode() + 
 	                         ", Response body: " + response.body();
-	        LOGGER.severe(errorMsg);
+	        LOGGER.severe(logPrefix + errorMsg);
 	        throw new IOException(errorMsg);
 	    }
 
@@ -105,44 +274,24 @@ public class DocumentTypesFetcher
 	    {
 	        // The response is the JWT token string directly, wrapped in quotes
 	        String jwt = mapper.readValue(response.body(), String.class);
-	        LOGGER.info("Login successful, JWT token received");
+	        LOGGER.info(logPrefix + "Login successful, JWT token received");
 	        return jwt;
 
 	    } catch (Exception e) {
-	        LOGGER.severe("Error parsing login response: " + e.getMessage());
+	        LOGGER.severe(logPrefix + "Error parsing login response: " + e.getMessage());
 	        throw new IOException("Failed to parse login response", e);
 	    }
 	}
 
-	private static void fetchAndSaveDocumentTypes(String jwt) throws IOException, InterruptedException
+	CompletableFuture<Void> fetchAndSaveDocumentTypesAsync(String jwt, RunMetrics metrics)
 	{
-		LOGGER.info("Fetching document types...");
-
 		String documentTypesUrl = baseUrl + "documentTypes";
-		HttpRequest request = HttpRequest.newBuilder().uri(URI.create(documentTypesUrl)).header("Authorization", "Bearer " + jwt).header("Accept", "application/json").GET()
-				.build();
-
-		// Log the curl equivalent
-		HttpRequestLogger.logRequest(request, null);
-
-		HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-
-		if (response.statusCode() != 200)
-		{
-			String errorMsg = "Failed to fetch document types. Status code: " + response.statusCode();
-			LOGGER.severe(errorMsg);
-			throw new IOException(errorMsg);
-		}
-
-		// Pretty print the JSON before saving
-		JsonNode documentTypes = mapper.readTree(response.body());
-		String prettyJson = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(documentTypes);
-
-		// Create directories if they don't exist
-		Files.createDirectories(Paths.get(outputJsonPath).getParent());
+		return downloader.fetchAsync(documentTypesUrl, jwt, Paths.get(outputJsonPath), "document types", metrics);
+	}
 
-		// Save the JSON file
-		Files.writeString(Paths.get(outputJsonPath), prettyJson);
-		LOGGER.info("Successfully saved document types to " + outputJsonPath);
+	CompletableFuture<SnapshotDownloader.SnapshotStream> openDocumentTypesAsync(String jwt, RunMetrics metrics)
+	{
+		String documentTypesUrl = baseUrl + "documentTypes";
+		return downloader.openAsync(documentTypesUrl, jwt, Paths.get(outputJsonPath), "document types", metrics);
 	}
 }
\ No newline at end of file
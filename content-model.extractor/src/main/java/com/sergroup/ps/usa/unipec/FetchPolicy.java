@@ -0,0 +1,29 @@
+package com.sergroup.ps.usa.unipec;
+
+/**
+ * How the REST snapshots under data/ are refreshed, configured by fetch.policy.
+ */
+public enum FetchPolicy
+{
+	/** Download every snapshot on every run. */
+	ALWAYS,
+	/**
+	 * Reuse a snapshot younger than fetch.ttl.minutes, otherwise send a
+	 * conditional request using the ETag / Last-Modified of the saved snapshot.
+	 */
+	REVALIDATE,
+	/** Never contact the server, render from the existing snapshots. */
+	OFFLINE;
+
+	public static FetchPolicy fromConfiguration(ConfigurationManager config)
+	{
+		String value = config.getProperty("fetch.policy", "always").trim();
+		try
+		{
+			return valueOf(value.toUpperCase());
+		} catch (IllegalArgumentException e)
+		{
+			throw new IllegalStateException("Invalid fetch.policy '" + value + "', expected one of always, revalidate, offline");
+		}
+	}
+}
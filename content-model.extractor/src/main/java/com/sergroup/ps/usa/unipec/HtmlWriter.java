@@ -0,0 +1,269 @@
+package com.sergroup.ps.usa.unipec;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a page as UTF-8 straight into a byte buffer that is flushed to a
+ * FileChannel, without the intermediate char buffer and encoder of a
+ * BufferedWriter. Text from the content model goes through
+ * {@link #appendEscaped(CharSequence)}, which escapes HTML while encoding.
+ *
+ * Each thread reuses one buffer for all the pages it writes, so a thread
+ * should only have one HtmlWriter open at a time; a second one gets a buffer
+ * of its own.
+ */
+public class HtmlWriter extends Writer
+{
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+	private static final ThreadLocal<Boolean> bufferInUse = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+	private final FileChannel channel;
+	private final byte[] buffer;
+	private final boolean sharedBuffer;
+	private int position;
+	// A high surrogate whose low surrogate has not been written yet
+	private char pendingHighSurrogate;
+	private boolean closed;
+
+	private HtmlWriter(FileChannel channel)
+	{
+		this.channel = channel;
+		sharedBuffer = !bufferInUse.get();
+		if (sharedBuffer)
+		{
+			bufferInUse.set(Boolean.TRUE);
+			buffer = buffers.get();
+		} else
+		{
+			buffer = new byte[BUFFER_SIZE];
+		}
+	}
+
+	/**
+	 * Creates or truncates the file at path.
+	 */
+	public static HtmlWriter open(Path path) throws IOException
+	{
+		return new HtmlWriter(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+	}
+
+	@Override
+	public void write(int c) throws IOException
+	{
+		encode((char) c);
+	}
+
+	@Override
+	public void write(char[] chars, int offset, int length) throws IOException
+	{
+		for (int i = offset, end = offset + length; i < end; i++)
+		{
+			encode(chars[i]);
+		}
+	}
+
+	@Override
+	public void write(String text, int offset, int length) throws IOException
+	{
+		int i = offset;
+		int end = offset + length;
+		while (i < end)
+		{
+			// Markup is almost all ASCII, which needs no encoding and no surrogate handling
+			char c = text.charAt(i++);
+			if (c < 0x80 && pendingHighSurrogate == 0 && position < buffer.length)
+			{
+				buffer[position++] = (byte) c;
+			} else
+			{
+				encode(c);
+			}
+		}
+	}
+
+	@Override
+	public HtmlWriter append(CharSequence text) throws IOException
+	{
+		String value = String.valueOf(text);
+		write(value, 0, value.length());
+		return this;
+	}
+
+	@Override
+	public HtmlWriter append(char c) throws IOException
+	{
+		encode(c);
+		return this;
+	}
+
+	/**
+	 * Writes text with the HTML special characters escaped; null is written as "null".
+	 */
+	public HtmlWriter appendEscaped(CharSequence text) throws IOException
+	{
+		String value = String.valueOf(text);
+		for (int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+			String entity = entity(c);
+			if (entity != null)
+			{
+				write(entity, 0, entity.length());
+			} else
+			{
+				encode(c);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * @return the text with the HTML special characters escaped, the same instance if there are none
+	 */
+	public static String escape(String text)
+	{
+		if (text == null)
+		{
+			return null;
+		}
+		int first = 0;
+		while (first < text.length() && entity(text.charAt(first)) == null)
+		{
+			first++;
+		}
+		if (first == text.length())
+		{
+			return text;
+		}
+		StringBuilder escaped = new StringBuilder(text.length() + 16).append(text, 0, first);
+		for (int i = first; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			String entity = entity(c);
+			if (entity != null)
+			{
+				escaped.append(entity);
+			} else
+			{
+				escaped.append(c);
+			}
+		}
+		return escaped.toString();
+	}
+
+	private static String entity(char c)
+	{
+		switch (c)
+		{
+		case '&':
+			return "&amp;";
+		case '<':
+			return "&lt;";
+		case '>':
+			return "&gt;";
+		case '"':
+			return "&quot;";
+		case '\'':
+			return "&#39;";
+		default:
+			return null;
+		}
+	}
+
+	private void encode(char c) throws IOException
+	{
+		if (position > buffer.length - 4)
+		{
+			flushBuffer();
+		}
+		if (pendingHighSurrogate != 0)
+		{
+			char high = pendingHighSurrogate;
+			pendingHighSurrogate = 0;
+			if (Character.isLowSurrogate(c))
+			{
+				int codePoint = Character.toCodePoint(high, c);
+				buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+				buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+				return;
+			}
+			// Unpaired surrogate, written as '?' like the standard encoder does
+			buffer[position++] = '?';
+			encode(c);
+			return;
+		}
+		if (c < 0x80)
+		{
+			buffer[position++] = (byte) c;
+		} else if (c < 0x800)
+		{
+			buffer[position++] = (byte) (0xC0 | (c >> 6));
+			buffer[position++] = (byte) (0x80 | (c & 0x3F));
+		} else if (Character.isHighSurrogate(c))
+		{
+			pendingHighSurrogate = c;
+		} else if (Character.isLowSurrogate(c))
+		{
+			buffer[position++] = '?';
+		} else
+		{
+			buffer[position++] = (byte) (0xE0 | (c >> 12));
+			buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+			buffer[position++] = (byte) (0x80 | (c & 0x3F));
+		}
+	}
+
+	private void flushBuffer() throws IOException
+	{
+		ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, position);
+		while (bytes.hasRemaining())
+		{
+			channel.write(bytes);
+		}
+		position = 0;
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		flushBuffer();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if (closed)
+		{
+			return;
+		}
+		closed = true;
+		try
+		{
+			if (pendingHighSurrogate != 0)
+			{
+				pendingHighSurrogate = 0;
+				if (position == buffer.length)
+				{
+					flushBuffer();
+				}
+				buffer[position++] = '?';
+			}
+			flushBuffer();
+		} finally
+		{
+			channel.close();
+			if (sharedBuffer)
+			{
+				bufferInUse.set(Boolean.FALSE);
+			}
+		}
+	}
+}
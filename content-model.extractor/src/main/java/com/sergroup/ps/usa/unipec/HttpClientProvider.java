@@ -0,0 +1,53 @@
+package com.sergroup.ps.usa.unipec;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.logging.Logger;
+
+/**
+ * Holds the single HttpClient shared by all REST calls, so the login, the
+ * document types and the attribute definitions requests reuse the same
+ * connection pool (and the same HTTP/2 connection where the server offers it).
+ * Redirects are not followed, so the bearer token is never sent to another host.
+ *
+ * http.keepAlive.seconds is applied through the JVM-wide system property
+ * jdk.httpclient.keepalive.timeout, unless that is already set. It therefore
+ * also applies to any other HttpClient created in the same process, e.g. by
+ * an embedding application; set the property on the command line to control
+ * it for the whole JVM.
+ */
+public class HttpClientProvider
+{
+	private static final Logger LOGGER = LoggingManager.getInstance().getLogger(HttpClientProvider.class);
+	private static HttpClient httpClient;
+
+	public static synchronized HttpClient getClient()
+	{
+		if (httpClient == null)
+		{
+			httpClient = createClient();
+		}
+		return httpClient;
+	}
+
+	private static HttpClient createClient()
+	{
+		ConfigurationManager config = ConfigurationManager.getInstance();
+
+		HttpClient.Version version = "HTTP_1_1".equalsIgnoreCase(config.getProperty("http.version", "HTTP_2").trim()) ? HttpClient.Version.HTTP_1_1 : HttpClient.Version.HTTP_2;
+		int connectTimeoutSeconds = config.getIntProperty("http.connectTimeout.seconds", 10);
+		int keepAliveSeconds = config.getIntProperty("http.keepAlive.seconds", 300);
+
+		// Idle connections are kept in the client's pool for this long; the JDK reads it when the pool is created
+		if (System.getProperty("jdk.httpclient.keepalive.timeout") == null)
+		{
+			System.setProperty("jdk.httpclient.keepalive.timeout", String.valueOf(keepAliveSeconds));
+		}
+
+		LOGGER.info("Creating shared HTTP client: version " + version + ", connect timeout " + connectTimeoutSeconds + "s, keep-alive " + keepAliveSeconds + "s");
+		return HttpClient.newBuilder()
+				.version(version)
+				.connectTimeout(Duration.ofSeconds(connectTimeoutSeconds))
+				.build();
+	}
+}
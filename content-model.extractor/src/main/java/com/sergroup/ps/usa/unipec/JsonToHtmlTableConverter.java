@@ -1,5 +1,11 @@
 package com.sergroup.ps.usa.unipec;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.CharacterEscapes;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.JsonNode;
 import java.io.*;
@@ -9,57 +15,81 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 import java.nio.file.*;
 import java.time.Duration;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.logging.*;
 
+/**
+ * Renders the table pages, the index page and the search and where-used
+ * indexes of one organization from its document types and attribute definitions.
+ * An instance can run any number of times, but only one run at a time.
+ */
 public class JsonToHtmlTableConverter
 {
 	private static final Logger LOGGER = LoggingManager.getInstance().getLogger(JsonToHtmlTableConverter.class);
-	private static String baseUrl;
-	private static String outputDirectory;
-	private static final Map<String, String> attributeCache = new ConcurrentHashMap<>();
-	private static final ExecutorService executorService = Executors.newFixedThreadPool(10);
 	private static final ObjectMapper mapper = new ObjectMapper();
-	private static String jsonInputPath;
-	private static String jwt;
+	private static final JsonFactory rowDataFactory = createRowDataFactory();
+	// Part of every content hash; change it whenever the page template changes
+	private static final String RENDER_SIGNATURE = "table-v3";
+	private final AttributeDefinitionsCache definitions;
+	private final String outputDirectory;
+	private final String jsonInputPath;
+	private final int renderThreads;
+	private final boolean incremental;
+	private final int rowCacheMaxEntries;
+	private final boolean buildSearchIndex;
+	private final int virtualThreshold;
+	private final boolean buildWhereUsed;
+	private final StaticAssets assets;
+	// This process renders the classes that ShardManifest assigns to shardIndex out of shardCount
+	private final int shardIndex;
+	private final int shardCount;
+	// Rendered <tr> fragments per attribute UUID, one slot per mandatory/readonly combination
+	private final Map<String, String[]> attributeCache = new ConcurrentHashMap<>();
+	private final LongAdder rowCacheHits = new LongAdder();
+	private final LongAdder rowCacheMisses = new LongAdder();
+	private final LongAdder unchangedTables = new LongAdder();
+	// References to missing attribute definitions per UUID, logged once at the end of a run instead of once per row
+	private final Map<String, LongAdder> unknownAttributes = new ConcurrentHashMap<>();
+	private SearchIndexBuilder searchIndex;
+	private WhereUsedIndex whereUsed;
+	private String renderSignature;
+	private Map<String, TableSummary> previousTables = Collections.emptyMap();
+	// Tables whose render failed in this run; only touched by the thread collecting the tables
+	private int failedTables;
+	// Tables of this shard for its partial manifest, null when not sharded
+	private List<ShardManifest.Entry> shardEntries;
+	// What the shard read, recorded in its partial manifest: the SHA-256 of the snapshot and its renderable classes
+	private String snapshotFingerprint;
+	private int renderableClasses;
+	// Supplied by process() or merge() for the run in progress
+	private RunMetrics metrics;
 
-	static
+	public JsonToHtmlTableConverter(ConfigurationManager config, AttributeDefinitionsCache definitions)
 	{
-		initializeConfiguration();
-	}
-
-	public static void process()
-	{
-	    try
-	    {
-	        LOGGER.info("Starting HTML table conversion process");
-	        String jsonInput = readJsonInput();
-	        LOGGER.info("JSON input file read successfully");
-
-	        List<TableContent> tables = processJson(jsonInput);  // Changed from List<String>
-	        writeOutputFiles(tables);
-
-	        LOGGER.info("Process completed successfully");
-	    } catch (Exception e)
-	    {
-	        LOGGER.severe("Error processing JSON: " + e);
-	        e.printStackTrace();
-	    }
-	}
-
-	private static void initializeConfiguration()
-	{
-		ConfigurationManager config = ConfigurationManager.getInstance();
-
 		// Validate required properties for JsonToHtmlTableConverter
 		config.validateRequiredProperties("api.baseUrl", "input.json.path", "output.directory");
 
-		// Load configuration values
-		baseUrl = config.getProperty("api.baseUrl");
+		this.definitions = definitions;
 		outputDirectory = config.getProperty("output.directory", "output");
 		jsonInputPath = config.getProperty("input.json.path");
+		renderThreads = Math.max(1, config.getIntProperty("render.threads", Runtime.getRuntime().availableProcessors()));
+		incremental = Boolean.parseBoolean(config.getProperty("output.incremental", "true"));
+		rowCacheMaxEntries = config.getIntProperty("render.rowCache.maxEntries", 100000);
+		buildSearchIndex = Boolean.parseBoolean(config.getProperty("output.searchIndex", "true"));
+		virtualThreshold = config.getIntProperty("render.virtual.threshold", 1000);
+		buildWhereUsed = Boolean.parseBoolean(config.getProperty("output.whereUsed", "true"));
+		shardCount = Math.max(1, config.getIntProperty("shard.count", 1));
+		shardIndex = config.getIntProperty("shard.index", 0);
+		if (shardIndex < 0 || shardIndex >= shardCount)
+		{
+			throw new IllegalStateException("shard.index must be between 0 and " + (shardCount - 1) + ", but is " + shardIndex);
+		}
+		assets = new StaticAssets(config);
+		renderSignature = RENDER_SIGNATURE + ":" + virtualThreshold + ":" + assets.signature();
 
 		// Create output directory if it doesn't exist
 		try
@@ -72,84 +102,427 @@ public class JsonToHtmlTableConverter
 		}
 	}
 
-	private static String readJsonInput() throws IOException
+	/**
+	 * @return whether all pages were generated; on failure the output directory may be partly updated
+	 */
+	public boolean process(RunMetrics metrics)
+	{
+		return process(null, null, metrics);
+	}
+
+	/**
+	 * Generates the pages from a document types stream instead of the file at
+	 * input.json.path, e.g. a response that is still downloading, when
+	 * documentTypes is not null. The stream is read only as fast as the render
+	 * threads keep up and is not closed.
+	 *
+	 * Tables are rendered on renderPool, which is left running so several
+	 * organizations can share it, or on a pool of render.threads threads
+	 * created for this run if it is null.
+	 *
+	 * With shard.count above 1 only the classes of shard.index are rendered,
+	 * and instead of the index page and the search and where-used indexes a
+	 * partial manifest is written for {@link #merge(RunMetrics)}.
+	 *
+	 * @return whether all pages were generated; on failure the output directory may be partly updated
+	 */
+	public boolean process(ExecutorService renderPool, InputStream documentTypes, RunMetrics metrics)
+	{
+		this.metrics = metrics;
+		try
+		{
+			LOGGER.info("Starting HTML table conversion process for " + outputDirectory);
+
+			assets.writeBundle(outputDirectory);
+
+			boolean sharded = shardCount > 1;
+			if (!incremental)
+			{
+				previousTables = Collections.emptyMap();
+			} else
+			{
+				previousTables = sharded ? ShardManifest.loadSummaries(outputDirectory, shardIndex, shardCount) : RenderManifest.load(outputDirectory);
+			}
+			searchIndex = buildSearchIndex && !sharded ? new SearchIndexBuilder() : null;
+			whereUsed = buildWhereUsed && !sharded ? new WhereUsedIndex(definitions, assets) : null;
+			shardEntries = sharded ? new ArrayList<>() : null;
+			unchangedTables.reset();
+			failedTables = 0;
+			// Attribute definitions may have changed since the previous run in this JVM
+			attributeCache.clear();
+			rowCacheHits.reset();
+			rowCacheMisses.reset();
+			unknownAttributes.clear();
+
+			List<TableSummary> tables;
+			long renderStart = System.nanoTime();
+			ExecutorService executorService = renderPool != null ? renderPool : Executors.newFixedThreadPool(renderThreads);
+			try
+			{
+				tables = processJson(executorService, documentTypes);
+			} finally
+			{
+				if (renderPool == null)
+				{
+					shutdownExecutor(executorService);
+				}
+				metrics.recordPhase("render", renderStart);
+			}
+			// Keep the previous index rather than publish one with classes missing
+			if (failedTables > 0)
+			{
+				throw new IOException(failedTables + " tables could not be generated");
+			}
+
+			long writeStart = System.nanoTime();
+			if (sharded)
+			{
+				ShardManifest.save(outputDirectory, shardIndex, shardCount, snapshotFingerprint, renderableClasses, shardEntries);
+			} else
+			{
+				writeOutputFiles(tables, metrics);
+			}
+			if (incremental)
+			{
+				RenderManifest.deleteStalePages(outputDirectory, previousTables, tables);
+				if (!sharded)
+				{
+					RenderManifest.save(outputDirectory, tables);
+				}
+				LOGGER.info("Skipped " + unchangedTables.sum() + " unchanged tables");
+			}
+			metrics.recordPhase("write", writeStart);
+			logRowCacheStatistics();
+			reportUnknownAttributes();
+
+			LOGGER.info("Process completed successfully for " + outputDirectory);
+			return true;
+		} catch (Exception e)
+		{
+			LOGGER.severe("Error processing JSON: " + e);
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Combines the partial manifests of all shard.count shards in the output
+	 * directory into the index page, the search index, the where-used pages and
+	 * manifest.json, as an unsharded run would have written them. The pages of
+	 * all shards must already be in the output directory, and the attribute
+	 * definitions loaded for the where-used pages.
+	 *
+	 * @return whether the merged files were written
+	 */
+	public boolean merge(RunMetrics metrics)
+	{
+		this.metrics = metrics;
+		try
+		{
+			long mergeStart = System.nanoTime();
+			List<ShardManifest.Entry> entries = ShardManifest.loadAll(outputDirectory, shardCount);
+			LOGGER.info("Merging " + entries.size() + " tables from " + shardCount + " shards in " + outputDirectory);
+
+			assets.writeBundle(outputDirectory);
+			searchIndex = buildSearchIndex ? new SearchIndexBuilder() : null;
+			whereUsed = buildWhereUsed ? new WhereUsedIndex(definitions, assets) : null;
+			List<TableSummary> tables = new ArrayList<>(entries.size());
+			for (ShardManifest.Entry entry : entries)
+			{
+				tables.add(entry.summary());
+				if (searchIndex != null)
+				{
+					searchIndex.addDocument(entry.searchTerms());
+				}
+				if (whereUsed != null)
+				{
+					int[] usages = new int[entry.attributes().length];
+					int count = 0;
+					for (int i = 0; i < usages.length; i++)
+					{
+						// Definitions deleted since the shard ran are left out, as for any unknown attribute
+						int index = definitions.indexOf(entry.attributes()[i]);
+						if (index >= 0)
+						{
+							usages[count++] = WhereUsedIndex.usage(index, (entry.flags()[i] & 2) != 0, (entry.flags()[i] & 1) != 0);
+						}
+					}
+					whereUsed.addClass(Arrays.copyOf(usages, count));
+				}
+			}
+
+			writeOutputFiles(tables, metrics);
+			RenderManifest.deleteStalePages(outputDirectory, RenderManifest.load(outputDirectory), tables);
+			RenderManifest.save(outputDirectory, tables);
+			metrics.increment("tables_merged", tables.size());
+			metrics.recordPhase("merge", mergeStart);
+			LOGGER.info("Merge completed successfully for " + outputDirectory);
+			return true;
+		} catch (Exception e)
+		{
+			LOGGER.severe("Error merging shards: " + e);
+			return false;
+		}
+	}
+
+	private static void shutdownExecutor(ExecutorService executorService)
 	{
+		executorService.shutdown();
 		try
 		{
-			String content = Files.readString(Paths.get(jsonInputPath));
-			LOGGER.fine("Read " + content.length() + " characters from " + jsonInputPath);
-			return content;
+			if (!executorService.awaitTermination(30, TimeUnit.SECONDS))
+			{
+				LOGGER.warning("Render threads did not terminate in time, forcing shutdown");
+				executorService.shutdownNow();
+			}
+		} catch (InterruptedException e)
+		{
+			executorService.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Streams the document types array from the given stream, or from the input
+	 * file if it is null, one object at a time, so only the document types
+	 * currently being rendered are held as trees. Each table is rendered and
+	 * written to disk on the given executor, and only its summary is kept.
+	 * Summaries are collected in input order so table numbering matches a
+	 * sequential run. While the window of pending tables is full no more input
+	 * is read, which also holds back a download feeding the stream.
+	 */
+	private List<TableSummary> processJson(ExecutorService executorService, InputStream input) throws IOException, InterruptedException
+	{
+		String source = input != null ? "the documentTypes response" : jsonInputPath;
+		LOGGER.info("Starting to stream JSON input from " + source + " using " + renderThreads + " render threads");
+
+		List<TableSummary> tables = new ArrayList<>();
+		Deque<Future<RenderedTable>> pending = new ArrayDeque<>();
+		int maxPending = renderThreads * 4;
+		int tableCounter = 0;
+		// Classes seen per name, to give repeated names pages of their own
+		Map<String, Integer> nameOccurrences = new HashMap<>();
+		// A shard hashes the bytes as it parses them, so a download being rendered needs no second pass
+		MessageDigest snapshotDigest = shardCount > 1 ? ShardManifest.newDigest() : null;
+
+		try (JsonParser parser = mapper.getFactory().createParser(openDocumentTypes(input, snapshotDigest))
+				.configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, input == null))
+		{
+			if (parser.nextToken() != JsonToken.START_ARRAY)
+			{
+				throw new IOException("Expected a JSON array of document types");
+			}
+
+			while (parser.nextToken() == JsonToken.START_OBJECT)
+			{
+				long parseStart = System.nanoTime();
+				JsonNode objectNode = mapper.readTree(parser);
+				metrics.recordPhase("parse", parseStart);
+				if (!isRenderable(objectNode))
+				{
+					continue;
+				}
+
+				// Every shard numbers all classes, so positions and page names agree across shards
+				int tableNumber = ++tableCounter;
+				String name = objectNode.get("name").asText();
+				String fileName = ShardManifest.pageName(name, nameOccurrences.merge(name, 1, Integer::sum));
+				if (shardCount > 1 && ShardManifest.shardOf(name, shardCount) != shardIndex)
+				{
+					continue;
+				}
+				pending.add(executorService.submit(() -> writeTable(objectNode, tableNumber, fileName)));
+
+				// Bound the number of parsed but not yet collected document types
+				if (pending.size() >= maxPending)
+				{
+					collectTable(pending.poll(), tables);
+				}
+			}
+
+			if (snapshotDigest != null)
+			{
+				// Whatever follows the array still belongs to the snapshot file
+				((InputStream) parser.getInputSource()).transferTo(OutputStream.nullOutputStream());
+				snapshotFingerprint = ShardManifest.fingerprint(snapshotDigest);
+				renderableClasses = tableCounter;
+			}
 		} catch (IOException e)
 		{
-			LOGGER.severe("Error reading JSON file from " + jsonInputPath + ": " + e.getMessage());
+			LOGGER.severe("Error reading JSON from " + source + ": " + e.getMessage());
 			throw e;
+		} finally
+		{
+			while (!pending.isEmpty())
+			{
+				collectTable(pending.poll(), tables);
+			}
 		}
+
+		LOGGER.info("Generated " + tables.size() + (shardCount > 1 ? " of " + tableCounter + " tables as shard " + shardIndex + " of " + shardCount : " tables"));
+		return tables;
 	}
 
-	private static List<TableContent> processJson(String jsonInput) throws IOException 
+	// Checked before a table number is assigned, so skipped entries leave no gaps
+	private InputStream openDocumentTypes(InputStream input, MessageDigest snapshotDigest) throws IOException
 	{
-	    LOGGER.info("Starting to process JSON input");
-	    
-	    JsonNode rootNode = mapper.readTree(jsonInput);
-	    List<TableContent> tables = new ArrayList<>();
-	    AtomicInteger tableCounter = new AtomicInteger(0);
-
-	    for (JsonNode objectNode : rootNode) 
-	    {
-	        try 
-	        {
-	            String documentName = objectNode.get("name").asText();
-	            String tableHtml = generateTable(objectNode, tableCounter.incrementAndGet());
-	            tables.add(new TableContent(documentName, tableHtml));
-	        } catch (Exception e) 
-	        {
-	            LOGGER.severe("Error generating table: " + e.getMessage());
-	        }
-	    }
+		InputStream stream = input != null ? input : Files.newInputStream(Paths.get(jsonInputPath));
+		return snapshotDigest != null ? new DigestInputStream(stream, snapshotDigest) : stream;
+	}
 
-	    LOGGER.info("Generated " + tables.size() + " tables");
-	    return tables;
+	private static boolean isRenderable(JsonNode objectNode)
+	{
+		JsonNode nameNode = objectNode.get("name");
+		if (nameNode == null || nameNode.isNull())
+		{
+			LOGGER.severe("Error generating table: missing name");
+			return false;
+		}
+
+		JsonNode attributeDefinitions = objectNode.get("allowedAttributeDefinitions");
+		if (attributeDefinitions == null || !attributeDefinitions.isArray())
+		{
+			LOGGER.severe("Invalid or missing allowedAttributeDefinitions for " + nameNode.asText());
+			return false;
+		}
+		return true;
 	}
 
-	private static String generateTable(JsonNode objectNode, int tableNumber) throws IOException 
+	// Runs in input order, so positions in the table list double as search and where-used document ids
+	private void collectTable(Future<RenderedTable> future, List<TableSummary> tables) throws InterruptedException
 	{
-	    LOGGER.fine("Generating table " + tableNumber);
+		try
+		{
+			RenderedTable table = future.get();
+			tables.add(table.summary());
+			if (shardEntries != null)
+			{
+				shardEntries.add(shardEntry(table));
+			}
+			if (searchIndex != null)
+			{
+				searchIndex.addDocument(table.searchTerms());
+			}
+			if (whereUsed != null)
+			{
+				whereUsed.addClass(table.usages());
+			}
+		} catch (ExecutionException e)
+		{
+			LOGGER.severe("Error generating table: " + e.getCause().getMessage());
+			failedTables++;
+		}
+	}
+
+	/**
+	 * What a render worker hands back: the summary kept for the index page, and
+	 * the search terms and attribute usages that are folded into the search and
+	 * where-used indexes and then dropped.
+	 */
+	private record RenderedTable(int position, TableSummary summary, Set<String> searchTerms, int[] usages)
+	{
+	}
+
+	// The attribute indexes of the usages become UUIDs, which the merge looks up in its own cache
+	private ShardManifest.Entry shardEntry(RenderedTable table)
+	{
+		int[] usages = table.usages() != null ? table.usages() : new int[0];
+		String[] attributes = new String[usages.length];
+		int[] flags = new int[usages.length];
+		for (int i = 0; i < usages.length; i++)
+		{
+			attributes[i] = definitions.getAttributeDefinition(usages[i] >>> 2).uuid();
+			flags[i] = usages[i] & 3;
+		}
+		// Table numbers start at 1, manifest positions at 0
+		return new ShardManifest.Entry(table.position() - 1, table.summary(), table.searchTerms(), attributes, flags);
+	}
+
+	private RenderedTable writeTable(JsonNode objectNode, int tableNumber, String fileName) throws IOException
+	{
+		Path filePath = Paths.get(outputDirectory, fileName);
+		String contentHash = incremental ? RenderManifest.computeHash(renderSignature, objectNode, definitions) : null;
+		Set<String> searchTerms = buildSearchIndex ? collectSearchTerms(objectNode) : Collections.emptySet();
+		int[] usages = buildWhereUsed ? collectUsages(objectNode) : null;
+
+		TableSummary previous = previousTables.get(fileName);
+		if (previous != null && contentHash.equals(previous.getContentHash()) && Files.exists(filePath))
+		{
+			LOGGER.fine(() -> "Table " + tableNumber + " is unchanged, skipping");
+			unchangedTables.increment();
+			metrics.increment("tables_unchanged");
+			return new RenderedTable(tableNumber, previous, searchTerms, usages);
+		}
+
+		long renderStart = System.nanoTime();
+		int rows = objectNode.get("allowedAttributeDefinitions").size();
+		int attributeCount;
+		try (Writer writer = HtmlWriter.open(filePath))
+		{
+			attributeCount = virtualThreshold > 0 && rows > virtualThreshold
+					? generateVirtualTable(objectNode, tableNumber, writer)
+					: generateTable(objectNode, tableNumber, writer);
+		}
+		metrics.recordTableRender(renderStart);
+		metrics.increment("tables_rendered");
+		metrics.increment("rows", rows);
+		metrics.addBytesWritten(filePath);
+		return new RenderedTable(tableNumber, new TableSummary(objectNode.get("name").asText(), fileName, attributeCount, contentHash), searchTerms, usages);
+	}
+
+	// The class name plus the names and short names of its known attributes
+	private Set<String> collectSearchTerms(JsonNode objectNode)
+	{
+		Set<String> terms = new HashSet<>();
+		SearchIndexBuilder.tokenize(objectNode.get("name").asText(), terms);
+		for (JsonNode attrDef : objectNode.get("allowedAttributeDefinitions"))
+		{
+			AttributeDefinition definition = definitions.getAttributeDefinition(attrDef.path("attributeDefinitionUUID").asText());
+			if (definition != null)
+			{
+				SearchIndexBuilder.tokenize(definition.name(), terms);
+				SearchIndexBuilder.tokenize(definition.shortName(), terms);
+			}
+		}
+		return terms;
+	}
+
+	// The known attributes of the class, packed as WhereUsedIndex usages
+	private int[] collectUsages(JsonNode objectNode)
+	{
+		JsonNode attributeDefinitions = objectNode.get("allowedAttributeDefinitions");
+		int[] usages = new int[attributeDefinitions.size()];
+		int count = 0;
+		for (JsonNode attrDef : attributeDefinitions)
+		{
+			int index = definitions.indexOf(attrDef.path("attributeDefinitionUUID").asText());
+			if (index >= 0)
+			{
+				usages[count++] = WhereUsedIndex.usage(index, attrDef.path("mandatory").asBoolean(), attrDef.path("readonly").asBoolean());
+			}
+		}
+		return Arrays.copyOf(usages, count);
+	}
+
+	/**
+	 * Renders the table page for one document type to the given writer.
+	 *
+	 * @return the number of attributes with a known definition
+	 */
+	int generateTable(JsonNode objectNode, int tableNumber, Writer htmlTable) throws IOException 
+	{
+	    LOGGER.fine(() -> "Generating table " + tableNumber);
 	    
 	    String name = objectNode.get("name").asText();
-	    LOGGER.fine("Processing table for: " + name);
+	    LOGGER.fine(() -> "Processing table for: " + name);
 
 	    JsonNode attributeDefinitions = objectNode.get("allowedAttributeDefinitions");
-	    if (attributeDefinitions == null || !attributeDefinitions.isArray()) {
-	        LOGGER.severe("Invalid or missing allowedAttributeDefinitions for " + name);
-	        throw new IllegalArgumentException("Invalid allowedAttributeDefinitions");
-	    }
+	    int attributeCount = 0;
 
-	    StringBuilder htmlTable = new StringBuilder();
 	    htmlTable.append("<!DOCTYPE html>\n<html>\n<head>\n")
-	            .append("<style>\n")
-	            .append("table { border-collapse: collapse; width: 100%; margin-top: 20px; }\n")
-	            .append("th, td { border: 1px solid #ddd; padding: 8px; text-align: left; }\n")
-	            .append("th { background-color: #f2f2f2; position: sticky; top: 0; }\n")
-	            .append("tr:nth-child(even) { background-color: #f9f9f9; }\n")
-	            .append("tr:hover { background-color: #f5f5f5; }\n")
-	            .append(".null-value { color: #999; font-style: italic; }\n")
-	            .append(".error-value { color: #ff4444; font-style: italic; }\n")
-	            .append(".unknown-row { display: table-row; }\n")
-	            .append(".controls { margin-bottom: 20px; }\n")
-	            .append(".controls label { display: inline-flex; align-items: center; }\n")
-	            .append(".controls input[type='checkbox'] { margin-right: 8px; }\n")
-	            .append("</style>\n")
-	            .append("<script>\n")
-	            .append("function toggleUnknownAttributes() {\n")
-	            .append("    const show = document.getElementById('showUnknown').checked;\n")
-	            .append("    const rows = document.getElementsByClassName('unknown-row');\n")
-	            .append("    for (let row of rows) {\n")
-	            .append("        row.style.display = show ? 'table-row' : 'none';\n")
-	            .append("    }\n")
-	            .append("}\n")
-	            .append("</script>\n")
+	            .append(assets.tableHead(""))
 	            .append("</head>\n<body>\n")
-	            .append("<h2>").append(name).append("</h2>\n")
+	            .append("<h2>").append(HtmlWriter.escape(name)).append("</h2>\n")
 	            .append("<div class='controls'>\n")
 	            .append("<label><input type='checkbox' id='showUnknown' checked onclick='toggleUnknownAttributes()'> ")
 	            .append("Show Unknown Attributes</label>\n")
@@ -171,141 +544,280 @@ public class JsonToHtmlTableConverter
 	        String uuid = attrDef.get("attributeDefinitionUUID").asText();
 	        boolean mandatory = attrDef.get("mandatory").asBoolean();
 	        boolean readonly = attrDef.get("readonly").asBoolean();
+
+	        // Attributes shared by many document types are rendered once and then copied
+	        String[] fragments = attributeCache.get(uuid);
+	        int variant = (mandatory ? 2 : 0) + (readonly ? 1 : 0);
+	        if (fragments != null && fragments[variant] != null) {
+	            rowCacheHits.increment();
+	            htmlTable.append(fragments[variant]);
+	            attributeCount++;
+	            continue;
+	        }
+	        rowCacheMisses.increment();
 	        
 	        // Get the full attribute definition from cache
-	        JsonNode fullAttrDef = AttributeDefinitionsCache.getAttributeDefinition(uuid);
+	        AttributeDefinition fullAttrDef = definitions.getAttributeDefinition(uuid);
 	        
 	        if (fullAttrDef == null) {
-	            LOGGER.warning("Attribute definition not found for UUID: " + uuid);
+	            recordUnknownAttribute(uuid);
 	            htmlTable.append("<tr class='unknown-row'>")
-	                    .append("<td><span class='error-value'>Unknown Attribute (").append(uuid).append(")</span></td>")
+	                    .append("<td><span class='error-value'>Unknown Attribute (").append(HtmlWriter.escape(uuid)).append(")</span></td>")
 	                    .append("<td><span class='error-value'>N/A</span></td>")
 	                    .append("<td><span class='error-value'>N/A</span></td>")
 	                    .append("<td><span class='error-value'>N/A</span></td>")
 	                    .append("<td><span class='error-value'>N/A</span></td>")
 	                    .append("<td><span class='error-value'>N/A</span></td>")
 	                    .append("<td><span class='error-value'>N/A</span></td>")
-	                    .append("<td>").append(mandatory).append("</td>")
-	                    .append("<td>").append(readonly).append("</td>")
+	                    .append("<td>").append(String.valueOf(mandatory)).append("</td>")
+	                    .append("<td>").append(String.valueOf(readonly)).append("</td>")
 	                    .append("</tr>\n");
 	            continue;
 	        }
 
-	        htmlTable.append("<tr>")
-	                .append("<td>").append(fullAttrDef.get("name").asText()).append("</td>")
-	                .append("<td>").append(formatValue(fullAttrDef.get("shortName"))).append("</td>")
-	                .append("<td>").append(formatValue(fullAttrDef.get("attributeDataType"))).append("</td>")
-	                .append("<td>").append(formatValue(fullAttrDef.get("defaultValue"))).append("</td>")
-	                .append("<td>").append(fullAttrDef.get("length").asInt()).append("</td>")
-	                .append("<td>").append(formatValue(fullAttrDef.get("multivalueType"))).append("</td>")
-	                .append("<td>").append(formatValue(fullAttrDef.get("fulltextUsage"))).append("</td>")
+	        String row = new StringBuilder("<tr>")
+	                .append("<td>").append(HtmlWriter.escape(fullAttrDef.name())).append("</td>")
+	                .append("<td>").append(formatValue(fullAttrDef.shortName())).append("</td>")
+	                .append("<td>").append(formatValue(fullAttrDef.attributeDataType())).append("</td>")
+	                .append("<td>").append(formatValue(fullAttrDef.defaultValue())).append("</td>")
+	                .append("<td>").append(fullAttrDef.length()).append("</td>")
+	                .append("<td>").append(formatValue(fullAttrDef.multivalueType())).append("</td>")
+	                .append("<td>").append(formatValue(fullAttrDef.fulltextUsage())).append("</td>")
 	                .append("<td>").append(mandatory).append("</td>")
 	                .append("<td>").append(readonly).append("</td>")
-	                .append("</tr>\n");
+	                .append("</tr>\n")
+	                .toString();
+	        htmlTable.append(row);
+	        attributeCount++;
+
+	        // Bounded by the number of distinct UUIDs; past the limit rows are simply rendered each time
+	        if (fragments == null && attributeCache.size() < rowCacheMaxEntries) {
+	            fragments = attributeCache.computeIfAbsent(uuid, key -> new String[4]);
+	        }
+	        if (fragments != null) {
+	            fragments[variant] = row;
+	        }
 	    }
 
 	    htmlTable.append("</table>\n</body>\n</html>");
-	    LOGGER.info("Completed generating table " + tableNumber + " for: " + name);
-	    return htmlTable.toString();
+	    LOGGER.fine(() -> "Completed generating table " + tableNumber + " for: " + name);
+	    return attributeCount;
+	}
+
+	/**
+	 * Renders the page for a document type with more than render.virtual.threshold
+	 * attributes. Instead of one table row per attribute, the rows are embedded as a
+	 * JSON array and the page script only builds the rows visible in the scrolled
+	 * viewport, and sorts and filters the array itself. Each row is
+	 * [name, shortName, dataType, defaultValue, length, multivalueType, fulltextUsage, mandatory, readonly, unknown];
+	 * for unknown attributes the name holds the UUID and the definition fields are null.
+	 *
+	 * @return the number of attributes with a known definition
+	 */
+	int generateVirtualTable(JsonNode objectNode, int tableNumber, Writer htmlTable) throws IOException
+	{
+		String name = objectNode.get("name").asText();
+		JsonNode attributeDefinitions = objectNode.get("allowedAttributeDefinitions");
+		LOGGER.fine(() -> "Generating virtualized table " + tableNumber + " for " + name + " with " + attributeDefinitions.size() + " attributes");
+		int attributeCount = 0;
+
+		htmlTable.append("<!DOCTYPE html>\n<html>\n<head>\n")
+				.append(assets.tableHead(""))
+				.append("</head>\n<body>\n")
+				.append("<h2>").append(HtmlWriter.escape(name)).append("</h2>\n")
+				.append("<div class='controls'>\n")
+				.append("<label><input type='checkbox' id='showUnknown' checked onclick='applyVirtualFilters()'> ")
+				.append("Show Unknown Attributes</label>\n")
+				.append("<label>Data Type <select id='filterType' onchange='applyVirtualFilters()'><option value=''>All</option></select></label>\n")
+				.append("<label>Mandatory <select id='filterMandatory' onchange='applyVirtualFilters()'>")
+				.append("<option value=''>All</option><option value='true'>true</option><option value='false'>false</option></select></label>\n")
+				.append("<label>Readonly <select id='filterReadonly' onchange='applyVirtualFilters()'>")
+				.append("<option value=''>All</option><option value='true'>true</option><option value='false'>false</option></select></label>\n")
+				.append("<span id='rowCount' class='row-count'></span>\n")
+				.append("</div>\n")
+				.append("<div id='viewport' class='viewport'>\n")
+				.append("<table class='virtual-table'>\n")
+				.append("<thead><tr>")
+				.append("<th onclick='sortVirtualTable(0)'>Attribute Name</th>")
+				.append("<th onclick='sortVirtualTable(1)'>Short Name</th>")
+				.append("<th onclick='sortVirtualTable(2)'>Data Type</th>")
+				.append("<th onclick='sortVirtualTable(3)'>Default Value</th>")
+				.append("<th onclick='sortVirtualTable(4)'>Length</th>")
+				.append("<th onclick='sortVirtualTable(5)'>Multivalue Type</th>")
+				.append("<th onclick='sortVirtualTable(6)'>Fulltext Usage</th>")
+				.append("<th onclick='sortVirtualTable(7)'>Mandatory</th>")
+				.append("<th onclick='sortVirtualTable(8)'>Readonly</th>")
+				.append("</tr></thead>\n")
+				.append("<tbody id='virtualRows'></tbody>\n")
+				.append("</table>\n</div>\n")
+				.append("<script type='application/json' id='tableData'>");
+
+		try (JsonGenerator rows = rowDataFactory.createGenerator(htmlTable))
+		{
+			rows.writeStartArray();
+			for (JsonNode attrDef : attributeDefinitions)
+			{
+				String uuid = attrDef.get("attributeDefinitionUUID").asText();
+				AttributeDefinition definition = definitions.getAttributeDefinition(uuid);
+
+				rows.writeStartArray();
+				if (definition == null)
+				{
+					recordUnknownAttribute(uuid);
+					rows.writeString(uuid);
+					for (int i = 0; i < 6; i++)
+					{
+						rows.writeNull();
+					}
+				} else
+				{
+					rows.writeString(definition.name());
+					rows.writeString(definition.shortName());
+					rows.writeString(definition.attributeDataType());
+					rows.writeString(definition.defaultValue());
+					rows.writeNumber(definition.length());
+					rows.writeString(definition.multivalueType());
+					rows.writeString(definition.fulltextUsage());
+					attributeCount++;
+				}
+				rows.writeBoolean(attrDef.get("mandatory").asBoolean());
+				rows.writeBoolean(attrDef.get("readonly").asBoolean());
+				rows.writeBoolean(definition == null);
+				rows.writeEndArray();
+			}
+			rows.writeEndArray();
+		}
+
+		htmlTable.append("</script>\n")
+				.append("<script>initVirtualTable();</script>\n")
+				.append("</body>\n</html>");
+		LOGGER.fine(() -> "Completed generating virtualized table " + tableNumber + " for: " + name);
+		return attributeCount;
+	}
+
+	// Escapes '<' so attribute values can never close the embedding script element
+	private static JsonFactory createRowDataFactory()
+	{
+		int[] escapes = CharacterEscapes.standardAsciiEscapesForJSON();
+		escapes['<'] = CharacterEscapes.ESCAPE_STANDARD;
+
+		JsonFactory factory = new JsonFactory();
+		factory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		factory.setCharacterEscapes(new CharacterEscapes()
+		{
+			@Override
+			public int[] getEscapeCodesForAscii()
+			{
+				return escapes;
+			}
+
+			@Override
+			public SerializableString getEscapeSequence(int ch)
+			{
+				return null;
+			}
+		});
+		return factory;
 	}
 	
-	private static String formatValue(JsonNode node) 
+	private void recordUnknownAttribute(String uuid)
+	{
+		unknownAttributes.computeIfAbsent(uuid, key -> new LongAdder()).increment();
+	}
+
+	// Most referenced first, one line per missing definition however many tables refer to it
+	private void reportUnknownAttributes()
 	{
-	    if (node == null || node.isNull()) {
+		if (unknownAttributes.isEmpty())
+		{
+			return;
+		}
+		List<Map.Entry<String, Long>> counts = new ArrayList<>(unknownAttributes.size());
+		long references = 0;
+		for (Map.Entry<String, LongAdder> entry : unknownAttributes.entrySet())
+		{
+			counts.add(Map.entry(entry.getKey(), entry.getValue().sum()));
+			references += entry.getValue().sum();
+		}
+		counts.sort(Map.Entry.<String, Long> comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+		metrics.increment("unknown_attributes", references);
+
+		LOGGER.warning(counts.size() + " attribute definitions not found, referenced " + references + " times");
+		for (Map.Entry<String, Long> count : counts)
+		{
+			LOGGER.warning("Attribute definition not found for UUID: " + count.getKey() + " (" + count.getValue() + (count.getValue() == 1 ? " reference)" : " references)"));
+		}
+	}
+
+	private void logRowCacheStatistics()
+	{
+		long hits = rowCacheHits.sum();
+		long misses = rowCacheMisses.sum();
+		long lookups = hits + misses;
+		LOGGER.info(String.format("Row fragment cache: %d hits, %d misses (%.1f%% hit rate), %d attributes cached", hits, misses,
+				lookups == 0 ? 0.0 : hits * 100.0 / lookups, attributeCache.size()));
+	}
+
+	static String formatValue(String value) 
+	{
+	    if (value == null) {
 	        return "<span class='null-value'>null</span>";
 	    }
-	    return node.asText();
+	    return HtmlWriter.escape(value);
 	}
 
-	private static void writeOutputFiles(List<TableContent> tables) 
+	void writeOutputFiles(List<TableSummary> tables, RunMetrics metrics) throws IOException
 	{
-	    try 
-	    {
-	        StringBuilder index = new StringBuilder();
+	    String searchIndexUrl = searchIndex != null ? searchIndex.write(outputDirectory) : null;
+	    if (searchIndexUrl != null) {
+	        metrics.addBytesWritten(Paths.get(outputDirectory, SearchIndexBuilder.INDEX_FILE));
+	    }
+	    if (whereUsed != null) {
+	        metrics.increment("bytes_written", whereUsed.write(outputDirectory, tables));
+	    }
+
+	    // Streamed like the table pages; the list alone runs to megabytes for large orgs
+	    Path indexPath = Paths.get(outputDirectory, "index.html");
+	    try (HtmlWriter index = HtmlWriter.open(indexPath)) {
 	        index.append("<!DOCTYPE html>\n<html>\n<head>\n")
 	             .append("<title>Document Classes</title>\n")
-	             .append("<style>\n")
-	             .append("body { font-family: Arial, sans-serif; margin: 0; padding: 20px; background-color: #f5f5f5; }\n")
-	             .append(".container { max-width: 1200px; margin: 0 auto; background-color: white; padding: 20px; border-radius: 8px; box-shadow: 0 2px 4px rgba(0,0,0,0.1); }\n")
-	             .append("h1 { color: #333; margin-bottom: 20px; }\n")
-	             .append("#searchBox { width: 100%; padding: 12px; margin-bottom: 20px; border: 1px solid #ddd; border-radius: 4px; font-size: 16px; box-sizing: border-box; }\n")
-	             .append("ul { list-style-type: none; padding: 0; }\n")
-	             .append("li { margin: 8px 0; padding: 8px; border-radius: 4px; transition: background-color 0.2s; }\n")
-	             .append("li:hover { background-color: #f0f0f0; }\n")
-	             .append("a { text-decoration: none; color: #0066cc; display: inline-block; }\n")
-	             .append("a:hover { color: #004499; }\n")
-	             .append(".attribute-count { color: #666; margin-left: 10px; font-size: 0.9em; }\n")
-	             .append(".no-attributes { color: #ff4444; }\n")
-	             .append(".no-results { display: none; color: #666; font-style: italic; padding: 10px; }\n")
-	             .append("</style>\n")
-	             .append("<script>\n")
-	             .append("function searchDocuments() {\n")
-	             .append("    const input = document.getElementById('searchBox').value.toLowerCase();\n")
-	             .append("    const items = document.getElementsByTagName('li');\n")
-	             .append("    const noResults = document.getElementById('noResults');\n")
-	             .append("    let hasResults = false;\n")
-	             .append("    for (let item of items) {\n")
-	             .append("        const text = item.textContent.toLowerCase();\n")
-	             .append("        if (text.includes(input)) {\n")
-	             .append("            item.style.display = '';\n")
-	             .append("            hasResults = true;\n")
-	             .append("        } else {\n")
-	             .append("            item.style.display = 'none';\n")
-	             .append("        }\n")
-	             .append("    }\n")
-	             .append("    noResults.style.display = hasResults ? 'none' : 'block';\n")
-	             .append("}\n")
-	             .append("</script>\n")
-	             .append("</head>\n<body>\n")
+	             .append(assets.indexHead(""))
+	             .append("</head>\n<body class='index-page'>\n")
 	             .append("<div class='container'>\n")
 	             .append("<h1>Document Classes</h1>\n")
-	             .append("<input type='text' id='searchBox' placeholder='Search document classes...' onkeyup='searchDocuments()'>\n")
-	             .append("<ul>\n");
+	             .append(whereUsed != null ? "<p><a href='" + WhereUsedIndex.DIRECTORY + "/index.html'>Attribute usage</a></p>\n" : "")
+	             .append(Files.exists(Paths.get(outputDirectory, SnapshotDiff.REPORT_HTML)) ? "<p><a href='" + SnapshotDiff.REPORT_HTML + "'>Changes since the previous snapshot</a></p>\n" : "")
+	             .append("<input type='text' id='searchBox' placeholder='Search document classes or attributes...' ")
+	             .append(searchIndexUrl != null ? "data-index='" + searchIndexUrl + "' " : "")
+	             .append("onfocus='loadSearchIndex()' oninput='scheduleSearch()'>\n")
+	             .append("<ul id='documentList'>\n");
 
-	        for (int i = 0; i < tables.size(); i++) {
-	            TableContent table = tables.get(i);
-	            String fileName = "table_" + (i + 1) + ".html";
-	            int attributeCount = countAttributes(table.getHtmlContent());
+	        for (TableSummary table : tables) {
+	            int attributeCount = table.getAttributeCount();
 
 	            // Add link to index with document name and attribute count
-	            index.append("<li>")
-	                 .append(String.format("<a href='%s'>%s</a>", fileName, table.getDocumentName()));
-	            
+	            index.append("<li><a href='").append(table.getFileName()).append("'>")
+	                 .appendEscaped(table.getDocumentName())
+	                 .append("</a>");
+
 	            if (attributeCount == 0) {
 	                index.append("<span class='attribute-count no-attributes'>(no attributes)</span>");
 	            } else {
-	                index.append(String.format("<span class='attribute-count'>(%d attribute%s)</span>", 
-	                    attributeCount, attributeCount == 1 ? "" : "s"));
+	                index.append("<span class='attribute-count'>(").append(String.valueOf(attributeCount))
+	                     .append(attributeCount == 1 ? " attribute)</span>" : " attributes)</span>");
 	            }
-	            
-	            index.append("</li>\n");
 
-	            // Write individual table file
-	            Path filePath = Paths.get(outputDirectory, fileName);
-	            Files.writeString(filePath, table.getHtmlContent());
+	            index.append("</li>\n");
 	        }
 
 	        index.append("</ul>\n")
 	             .append("<div id='noResults' class='no-results'>No matching document classes found</div>\n")
 	             .append("</div>\n")
 	             .append("</body>\n</html>");
-
-	        Files.writeString(Paths.get(outputDirectory, "index.html"), index.toString());
-
-	        LOGGER.info("Successfully generated all files in " + outputDirectory);
-
-	    } catch (Exception e) 
-	    {
-	        LOGGER.severe("Error writing output files: " + e.getMessage());
 	    }
-	}
+	    metrics.addBytesWritten(indexPath);
 
-	// Helper method to count attributes in a table
-	private static int countAttributes(String htmlContent) 
-	{
-	    // Count the number of <tr> tags minus 1 (for header row)
-	    int rowCount = htmlContent.split("<tr>").length - 2; // -2 for header row and split artifact
-	    return Math.max(0, rowCount); // Ensure we don't return negative numbers
+	    LOGGER.info("Successfully generated all files in " + outputDirectory);
 	}
 
 	
@@ -16,13 +16,26 @@ import java.util.logging.SimpleFormatter;
 
 public class LoggingManager
 {
-	private static final String LOG_DIRECTORY = "logs";
+	static final String LOG_DIRECTORY = "logs";
 	private static LoggingManager instance;
 	private static final Map<String, Logger> loggers = new ConcurrentHashMap<>();
 
+	// Shared by all loggers when logging.async is enabled, otherwise each class gets its own FileHandler
+	private final AsyncLogHandler asyncHandler;
+
 	private LoggingManager()
 	{
 		createLogDirectory();
+		ConfigurationManager config = ConfigurationManager.getInstance();
+		if (Boolean.parseBoolean(config.getProperty("logging.async", "false")))
+		{
+			asyncHandler = new AsyncLogHandler(LOG_DIRECTORY, "content-model", config.getIntProperty("logging.async.queueSize", 8192));
+			// Write out what is still queued when the JVM exits
+			Runtime.getRuntime().addShutdownHook(new Thread(asyncHandler::close, "log-writer-shutdown"));
+		} else
+		{
+			asyncHandler = null;
+		}
 	}
 
 	public static LoggingManager getInstance()
@@ -68,6 +81,17 @@ public class LoggingManager
 			String configuredLevel = ConfigurationManager.getInstance().getProperty("logging.level", "INFO");
 			Level logLevel = Level.parse(configuredLevel.toUpperCase());
 
+			if (asyncHandler != null)
+			{
+				for (Handler handler : logger.getHandlers())
+				{
+					logger.removeHandler(handler);
+				}
+				logger.addHandler(asyncHandler);
+				logger.setLevel(logLevel);
+				return;
+			}
+
 			// Create a file handler with daily rolling pattern
 			String logFile = String.format("%s/%s_%s.log", LOG_DIRECTORY, className.substring(className.lastIndexOf('.') + 1).toLowerCase(),
 					new SimpleDateFormat("yyyy-MM-dd").format(new Date()));
@@ -0,0 +1,157 @@
+package com.sergroup.ps.usa.unipec;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Batch mode: generates the pages of every organization listed in the orgs
+ * property in one JVM, instead of starting one process per organization.
+ *
+ * The organizations share the HTTP client, the snapshot writer threads and one
+ * pool of render.threads render threads, so the machine is not oversubscribed
+ * however many organizations run at once. Everything that describes an
+ * organization, such as its credentials, snapshots, output directory and
+ * attribute definitions, is kept per organization and configured through
+ * org.<name>.<property> overrides.
+ *
+ * Exits with status 1 if any organization failed, after all of them have run,
+ * and with status 2 before running any of them if two organizations would
+ * write to the same snapshot, baseline or output directory.
+ */
+public class MultiOrgRunner
+{
+	private static final Logger LOGGER = LoggingManager.getInstance().getLogger(MultiOrgRunner.class);
+
+	public static void main(String[] args)
+	{
+		ConfigurationManager config = ConfigurationManager.getInstance();
+		List<String> orgs = config.getProfileNames();
+		if (orgs.isEmpty())
+		{
+			LOGGER.severe("No organizations configured, list them in the orgs property");
+			System.exit(2);
+		}
+		if (!ownPathsPerOrganization(config, orgs))
+		{
+			System.exit(2);
+		}
+
+		int renderThreads = Math.max(1, config.getIntProperty("render.threads", Runtime.getRuntime().availableProcessors()));
+		int parallelism = Math.max(1, Math.min(orgs.size(), config.getIntProperty("orgs.parallelism", orgs.size())));
+		LOGGER.info("Running " + orgs.size() + " organizations, " + parallelism + " at a time, on " + renderThreads + " shared render threads");
+
+		ExecutorService renderPool = Executors.newFixedThreadPool(renderThreads, threadsNamed("render"));
+		ExecutorService orgPool = Executors.newFixedThreadPool(parallelism, threadsNamed("org"));
+		long start = System.nanoTime();
+		List<String> failed = new ArrayList<>();
+		try
+		{
+			Map<String, Future<Boolean>> runs = new LinkedHashMap<>();
+			for (String org : orgs)
+			{
+				// Created on the org thread, so an invalid profile only fails its own run
+				runs.put(org, orgPool.submit(() -> new DocumentTypesFetcher(config.forProfile(org)).run(renderPool)));
+			}
+
+			for (Map.Entry<String, Future<Boolean>> run : runs.entrySet())
+			{
+				try
+				{
+					if (!run.getValue().get())
+					{
+						failed.add(run.getKey());
+					}
+				} catch (ExecutionException e)
+				{
+					LOGGER.severe("[" + run.getKey() + "] Run failed: " + e.getCause());
+					failed.add(run.getKey());
+				}
+			}
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			LOGGER.severe("Interrupted while waiting for the organizations to finish");
+			System.exit(1);
+		} finally
+		{
+			orgPool.shutdownNow();
+			renderPool.shutdown();
+		}
+
+		long seconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
+		if (failed.isEmpty())
+		{
+			LOGGER.info("All " + orgs.size() + " organizations completed in " + seconds + " s");
+			return;
+		}
+		LOGGER.severe(failed.size() + " of " + orgs.size() + " organizations failed in " + seconds + " s: " + String.join(", ", failed));
+		System.exit(1);
+	}
+
+	/**
+	 * Checks that no two organizations resolve to the same snapshot files,
+	 * change report baseline or output directory, which would let them
+	 * overwrite each other's data, for example when a path is only set once
+	 * for all organizations.
+	 */
+	static boolean ownPathsPerOrganization(ConfigurationManager config, List<String> orgs)
+	{
+		Map<Path, String> owners = new HashMap<>();
+		boolean distinct = true;
+		for (String org : orgs)
+		{
+			ConfigurationManager profile = config.forProfile(org);
+			List<Path> paths = new ArrayList<>();
+			paths.add(Paths.get(profile.getProperty("output.directory", "output")));
+			String documentTypes = profile.getProperty("input.json.path");
+			String attributeDefinitions = profile.getProperty("attribute.definitions.path");
+			// Missing paths are reported by the run of the organization itself
+			if (documentTypes != null)
+			{
+				paths.add(Paths.get(documentTypes));
+			}
+			if (attributeDefinitions != null)
+			{
+				paths.add(Paths.get(attributeDefinitions));
+			}
+			if (documentTypes != null && attributeDefinitions != null && Boolean.parseBoolean(profile.getProperty("diff.enabled", "true")))
+			{
+				Path baselineDirectory = SnapshotDiff.baselineDirectory(profile);
+				paths.add(baselineDirectory.resolve(Paths.get(documentTypes).getFileName()));
+				paths.add(baselineDirectory.resolve(Paths.get(attributeDefinitions).getFileName()));
+			}
+
+			for (Path path : paths)
+			{
+				Path resolved = path.toAbsolutePath().normalize();
+				String owner = owners.putIfAbsent(resolved, org);
+				if (owner != null && !owner.equals(org))
+				{
+					LOGGER.severe("Organizations " + owner + " and " + org + " both use " + resolved
+							+ ", set input.json.path, attribute.definitions.path and output.directory per organization");
+					distinct = false;
+				}
+			}
+		}
+		return distinct;
+	}
+
+	private static ThreadFactory threadsNamed(String prefix)
+	{
+		AtomicInteger counter = new AtomicInteger();
+		return runnable -> new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+	}
+}
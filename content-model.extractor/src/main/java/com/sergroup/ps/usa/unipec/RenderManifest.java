@@ -0,0 +1,171 @@
+package com.sergroup.ps.usa.unipec;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Persists, per generated table page, a content hash of the document type JSON
+ * and of the attribute definitions it references. A later run only re-renders
+ * pages whose hash changed and deletes pages that are no longer produced.
+ */
+public class RenderManifest
+{
+	private static final Logger LOGGER = LoggingManager.getInstance().getLogger(RenderManifest.class);
+	private static final ObjectMapper mapper = new ObjectMapper();
+	private static final String MANIFEST_FILE = "manifest.json";
+	private static final int MANIFEST_VERSION = 1;
+
+	/**
+	 * Loads the manifest of the previous run, keyed by file name. Returns an empty
+	 * map when there is no manifest or it cannot be read, which forces a full render.
+	 */
+	public static Map<String, TableSummary> load(String outputDirectory)
+	{
+		Map<String, TableSummary> tables = new HashMap<>();
+		Path manifestPath = Paths.get(outputDirectory, MANIFEST_FILE);
+		if (!Files.exists(manifestPath))
+		{
+			LOGGER.info("No render manifest found in " + outputDirectory + ", rendering all tables");
+			return tables;
+		}
+
+		try
+		{
+			JsonNode root = mapper.readTree(manifestPath.toFile());
+			if (root.path("version").asInt() != MANIFEST_VERSION)
+			{
+				LOGGER.info("Render manifest version changed, rendering all tables");
+				return tables;
+			}
+
+			for (JsonNode entry : root.path("tables"))
+			{
+				TableSummary table = new TableSummary(entry.get("documentName").asText(), entry.get("fileName").asText(), entry.get("attributeCount").asInt(),
+						entry.get("contentHash").asText());
+				tables.put(table.getFileName(), table);
+			}
+			LOGGER.info("Loaded render manifest with " + tables.size() + " tables");
+		} catch (Exception e)
+		{
+			LOGGER.warning("Could not read render manifest " + manifestPath + ", rendering all tables: " + e.getMessage());
+			tables.clear();
+		}
+		return tables;
+	}
+
+	public static void save(String outputDirectory, List<TableSummary> tables) throws IOException
+	{
+		ObjectNode root = mapper.createObjectNode();
+		root.put("version", MANIFEST_VERSION);
+		ArrayNode entries = root.putArray("tables");
+		for (TableSummary table : tables)
+		{
+			entries.addObject()
+					.put("documentName", table.getDocumentName())
+					.put("fileName", table.getFileName())
+					.put("attributeCount", table.getAttributeCount())
+					.put("contentHash", table.getContentHash());
+		}
+
+		// Write to a temporary file first so an interrupted run never leaves a truncated manifest
+		Path manifestPath = Paths.get(outputDirectory, MANIFEST_FILE);
+		Path tempPath = Paths.get(outputDirectory, MANIFEST_FILE + ".tmp");
+		mapper.writeValue(tempPath.toFile(), root);
+		Files.move(tempPath, manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		LOGGER.fine("Saved render manifest with " + tables.size() + " tables");
+	}
+
+	/**
+	 * Deletes pages recorded by the previous run that the current run no longer produces.
+	 */
+	public static void deleteStalePages(String outputDirectory, Map<String, TableSummary> previousTables, List<TableSummary> currentTables)
+	{
+		Set<String> currentFiles = new HashSet<>();
+		for (TableSummary table : currentTables)
+		{
+			currentFiles.add(table.getFileName());
+		}
+
+		int deleted = 0;
+		for (String fileName : previousTables.keySet())
+		{
+			if (currentFiles.contains(fileName))
+			{
+				continue;
+			}
+			try
+			{
+				if (Files.deleteIfExists(Paths.get(outputDirectory, fileName)))
+				{
+					deleted++;
+				}
+			} catch (IOException e)
+			{
+				LOGGER.warning("Could not delete stale page " + fileName + ": " + e.getMessage());
+			}
+		}
+
+		if (deleted > 0)
+		{
+			LOGGER.info("Deleted " + deleted + " pages for document classes that no longer exist");
+		}
+	}
+
+	/**
+	 * Hashes everything a table page is rendered from: the render signature, the
+	 * document type JSON and each referenced attribute definition.
+	 */
+	public static String computeHash(String renderSignature, JsonNode documentType, AttributeDefinitionsCache attributeDefinitions)
+	{
+		MessageDigest digest = newDigest();
+		update(digest, renderSignature);
+		update(digest, documentType.toString());
+
+		for (JsonNode attrDef : documentType.path("allowedAttributeDefinitions"))
+		{
+			AttributeDefinition definition = attributeDefinitions.getAttributeDefinition(attrDef.path("attributeDefinitionUUID").asText());
+			update(digest, definition != null ? definition.toString() : "missing");
+		}
+
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest())
+		{
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	private static void update(MessageDigest digest, String value)
+	{
+		digest.update(value.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+	}
+
+	private static MessageDigest newDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+}
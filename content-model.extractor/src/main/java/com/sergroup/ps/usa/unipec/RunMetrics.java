@@ -0,0 +1,271 @@
+package com.sergroup.ps.usa.unipec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Phase timers, counters and a histogram of per-table render times for one run,
+ * written to logs/metrics.json and, in the Prometheus text format, to
+ * logs/metrics.prom when the run ends.
+ *
+ * All values describe the last run only, so the Prometheus file exposes them as
+ * gauges; it can be picked up by the node_exporter textfile collector. Both files
+ * are replaced atomically so a collector never reads a half-written file.
+ *
+ * Each run creates its own instance. Runs for an organization profile write
+ * metrics-<name>.json and metrics-<name>.prom, with an org label on every metric.
+ */
+public class RunMetrics
+{
+	private static final Logger LOGGER = LoggingManager.getInstance().getLogger(RunMetrics.class);
+	public static final String JSON_FILE = "metrics.json";
+	public static final String PROMETHEUS_FILE = "metrics.prom";
+	private static final String PREFIX = "content_model_";
+	// Upper bounds of the render time histogram buckets in milliseconds, the last bucket is +Inf
+	private static final long[] RENDER_BUCKETS_MILLIS = { 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000 };
+	private static final JsonFactory jsonFactory = new JsonFactory();
+
+	private final ConfigurationManager config;
+	// Sorted so both files list the metrics in a stable order
+	private final Map<String, LongAdder> phaseNanos = new ConcurrentSkipListMap<>();
+	private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+	private final LongAdder[] renderBuckets = new LongAdder[RENDER_BUCKETS_MILLIS.length + 1];
+	private final LongAdder renderCount = new LongAdder();
+	private final LongAdder renderNanos = new LongAdder();
+	private final long runStartMillis = System.currentTimeMillis();
+	private final long runStartNanos = System.nanoTime();
+
+	/**
+	 * Starts the clock of a new run.
+	 */
+	public RunMetrics(ConfigurationManager config)
+	{
+		this.config = config;
+		for (int i = 0; i < renderBuckets.length; i++)
+		{
+			renderBuckets[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Adds the time since startNanos (from System.nanoTime()) to a phase timer.
+	 * A phase recorded several times, possibly from several threads, sums up.
+	 */
+	public void recordPhase(String phase, long startNanos)
+	{
+		phaseNanos.computeIfAbsent(phase, key -> new LongAdder()).add(System.nanoTime() - startNanos);
+	}
+
+	public void increment(String counter)
+	{
+		increment(counter, 1);
+	}
+
+	public void increment(String counter, long amount)
+	{
+		counters.computeIfAbsent(counter, key -> new LongAdder()).add(amount);
+	}
+
+	/**
+	 * Counts the size of a file that was just written towards bytes_written.
+	 */
+	public void addBytesWritten(Path file)
+	{
+		try
+		{
+			increment("bytes_written", Files.size(file));
+		} catch (IOException e)
+		{
+			LOGGER.fine("Could not determine size of " + file + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Records the time since startNanos as the render time of one table page.
+	 */
+	public void recordTableRender(long startNanos)
+	{
+		long nanos = System.nanoTime() - startNanos;
+		renderCount.increment();
+		renderNanos.add(nanos);
+		int bucket = 0;
+		while (bucket < RENDER_BUCKETS_MILLIS.length && nanos > RENDER_BUCKETS_MILLIS[bucket] * 1_000_000)
+		{
+			bucket++;
+		}
+		renderBuckets[bucket].increment();
+	}
+
+	/**
+	 * Writes both metrics files for this run. Failures are only logged, they
+	 * must not fail the run.
+	 */
+	public void write(boolean success)
+	{
+		if (!Boolean.parseBoolean(config.getProperty("metrics.enabled", "true")))
+		{
+			return;
+		}
+		long durationNanos = System.nanoTime() - runStartNanos;
+		String profile = config.getProfileName();
+		String suffix = profile != null ? "-" + profile : "";
+		try
+		{
+			Path directory = Paths.get(LoggingManager.LOG_DIRECTORY);
+			Files.createDirectories(directory);
+			Path json = directory.resolve(JSON_FILE.replace(".json", suffix + ".json"));
+			Path prometheus = directory.resolve(PROMETHEUS_FILE.replace(".prom", suffix + ".prom"));
+			replace(json, output -> writeJson(output, success, durationNanos));
+			replace(prometheus, output -> writePrometheus(output, success, durationNanos));
+			LOGGER.info("Wrote run metrics to " + json + " and " + prometheus);
+		} catch (IOException e)
+		{
+			LOGGER.warning("Could not write run metrics: " + e.getMessage());
+		}
+	}
+
+	private interface Content
+	{
+		void writeTo(OutputStream output) throws IOException;
+	}
+
+	private static void replace(Path path, Content content) throws IOException
+	{
+		Path tempFile = Paths.get(path + ".part");
+		try
+		{
+			try (OutputStream output = Files.newOutputStream(tempFile))
+			{
+				content.writeTo(output);
+			}
+			Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally
+		{
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	private void writeJson(OutputStream output, boolean success, long durationNanos) throws IOException
+	{
+		try (JsonGenerator generator = jsonFactory.createGenerator(output, JsonEncoding.UTF8))
+		{
+			generator.useDefaultPrettyPrinter();
+			generator.writeStartObject();
+			if (config.getProfileName() != null)
+			{
+				generator.writeStringField("org", config.getProfileName());
+			}
+			generator.writeBooleanField("success", success);
+			generator.writeNumberField("startTime", runStartMillis);
+			generator.writeNumberField("durationMillis", durationNanos / 1_000_000);
+
+			generator.writeObjectFieldStart("phasesMillis");
+			for (Map.Entry<String, LongAdder> phase : phaseNanos.entrySet())
+			{
+				generator.writeNumberField(phase.getKey(), phase.getValue().sum() / 1_000_000);
+			}
+			generator.writeEndObject();
+
+			generator.writeObjectFieldStart("counters");
+			for (Map.Entry<String, LongAdder> counter : counters.entrySet())
+			{
+				generator.writeNumberField(counter.getKey(), counter.getValue().sum());
+			}
+			generator.writeEndObject();
+
+			generator.writeObjectFieldStart("tableRenderMillis");
+			generator.writeNumberField("count", renderCount.sum());
+			generator.writeNumberField("sum", renderNanos.sum() / 1_000_000);
+			generator.writeObjectFieldStart("buckets");
+			for (int i = 0; i < renderBuckets.length; i++)
+			{
+				// Per bucket, not cumulative as in the Prometheus file
+				generator.writeNumberField(i < RENDER_BUCKETS_MILLIS.length ? "le" + RENDER_BUCKETS_MILLIS[i] : "inf", renderBuckets[i].sum());
+			}
+			generator.writeEndObject();
+			generator.writeEndObject();
+
+			generator.writeEndObject();
+		}
+	}
+
+	private void writePrometheus(OutputStream output, boolean success, long durationNanos) throws IOException
+	{
+		// Every sample carries the org label in batch runs, so the files of all organizations can be collected together
+		String org = config.getProfileName() != null ? "org=\"" + escapeLabelValue(config.getProfileName()) + "\"" : null;
+		try (Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8))
+		{
+			gauge(writer, "run_success", "Whether the last run generated all pages", labels(org, null), success ? "1" : "0");
+			gauge(writer, "run_start_timestamp_seconds", "Start of the last run", labels(org, null), String.valueOf(runStartMillis / 1000));
+			gauge(writer, "run_duration_seconds", "Duration of the last run", labels(org, null), seconds(durationNanos));
+
+			writer.write("# HELP " + PREFIX + "phase_seconds Time spent in each phase of the last run\n");
+			writer.write("# TYPE " + PREFIX + "phase_seconds gauge\n");
+			for (Map.Entry<String, LongAdder> phase : phaseNanos.entrySet())
+			{
+				writer.write(PREFIX + "phase_seconds" + labels(org, "phase=\"" + phase.getKey() + "\"") + " " + seconds(phase.getValue().sum()) + "\n");
+			}
+
+			for (Map.Entry<String, LongAdder> counter : counters.entrySet())
+			{
+				gauge(writer, counter.getKey(), "Count of " + counter.getKey().replace('_', ' ') + " in the last run", labels(org, null), String.valueOf(counter.getValue().sum()));
+			}
+
+			String histogram = PREFIX + "table_render_seconds";
+			writer.write("# HELP " + histogram + " Time to render and write one table page in the last run\n");
+			writer.write("# TYPE " + histogram + " histogram\n");
+			long cumulative = 0;
+			for (int i = 0; i < renderBuckets.length; i++)
+			{
+				cumulative += renderBuckets[i].sum();
+				String bound = i < RENDER_BUCKETS_MILLIS.length ? seconds(RENDER_BUCKETS_MILLIS[i] * 1_000_000) : "+Inf";
+				writer.write(histogram + "_bucket" + labels(org, "le=\"" + bound + "\"") + " " + cumulative + "\n");
+			}
+			writer.write(histogram + "_sum" + labels(org, null) + " " + seconds(renderNanos.sum()) + "\n");
+			writer.write(histogram + "_count" + labels(org, null) + " " + renderCount.sum() + "\n");
+		}
+	}
+
+	private static void gauge(Writer writer, String name, String help, String labels, String value) throws IOException
+	{
+		writer.write("# HELP " + PREFIX + name + " " + help + "\n");
+		writer.write("# TYPE " + PREFIX + name + " gauge\n");
+		writer.write(PREFIX + name + labels + " " + value + "\n");
+	}
+
+	private static String labels(String org, String label)
+	{
+		if (org == null)
+		{
+			return label == null ? "" : "{" + label + "}";
+		}
+		return label == null ? "{" + org + "}" : "{" + org + "," + label + "}";
+	}
+
+	// Backslash, double quote and line feed must be escaped in label values of the text format
+	static String escapeLabelValue(String value)
+	{
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	private static String seconds(long nanos)
+	{
+		return String.format(Locale.ROOT, "%.6f", nanos / 1e9).replaceAll("0+$", "").replaceAll("\\.$", "");
+	}
+}
@@ -0,0 +1,175 @@
+package com.sergroup.ps.usa.unipec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Builds the inverted index behind the search box of index.html. Each document
+ * class is tokenized together with the names and short names of the attributes
+ * it uses; the index maps every token to the ascending list of document ids
+ * (positions in the index page list) that contain it.
+ *
+ * The index is written as search-index.js, a script assigning
+ * window.SEARCH_INDEX, so it also loads when the pages are opened from disk:
+ * <pre>
+ * { "documents": n, "terms": [sorted tokens], "postings": [[first id, delta, delta, ...], ...] }
+ * </pre>
+ */
+public class SearchIndexBuilder
+{
+	private static final Logger LOGGER = LoggingManager.getInstance().getLogger(SearchIndexBuilder.class);
+	public static final String INDEX_FILE = "search-index.js";
+	private static final JsonFactory jsonFactory = new JsonFactory();
+
+	private final Map<String, Postings> postings = new HashMap<>();
+	private int documentCount;
+
+	private static final class Postings
+	{
+		private int[] documents = new int[4];
+		private int size;
+
+		void add(int documentId)
+		{
+			// Documents are added in ascending order, so a repeat can only be the last entry
+			if (size > 0 && documents[size - 1] == documentId)
+			{
+				return;
+			}
+			if (size == documents.length)
+			{
+				documents = Arrays.copyOf(documents, size * 2);
+			}
+			documents[size++] = documentId;
+		}
+	}
+
+	/**
+	 * Splits text into lower-case runs of letters and digits and adds them to the given set.
+	 * Works on code points and lower-cases before splitting, like the query tokenizer
+	 * in the page script, so letters outside the BMP match there too.
+	 */
+	public static void tokenize(String text, Set<String> tokens)
+	{
+		if (text == null)
+		{
+			return;
+		}
+		String lowerCase = text.toLowerCase(Locale.ROOT);
+		int start = -1;
+		int i = 0;
+		while (i <= lowerCase.length())
+		{
+			int codePoint = i < lowerCase.length() ? lowerCase.codePointAt(i) : -1;
+			boolean wordChar = codePoint >= 0 && Character.isLetterOrDigit(codePoint);
+			if (wordChar && start < 0)
+			{
+				start = i;
+			} else if (!wordChar && start >= 0)
+			{
+				tokens.add(lowerCase.substring(start, i));
+				start = -1;
+			}
+			i += codePoint >= 0 ? Character.charCount(codePoint) : 1;
+		}
+	}
+
+	/**
+	 * Adds the next document. Must be called in index page order.
+	 */
+	public void addDocument(Collection<String> terms)
+	{
+		int documentId = documentCount++;
+		for (String term : terms)
+		{
+			postings.computeIfAbsent(term, key -> new Postings()).add(documentId);
+		}
+	}
+
+	/**
+	 * Writes search-index.js to the output directory.
+	 *
+	 * @return the relative URL of the index, versioned by its content so browsers pick up changes
+	 */
+	public String write(String outputDirectory) throws IOException
+	{
+		List<String> terms = new ArrayList<>(postings.keySet());
+		terms.sort(null);
+
+		MessageDigest digest = newDigest();
+		Path indexPath = Paths.get(outputDirectory, INDEX_FILE);
+		try (OutputStream output = new DigestOutputStream(Files.newOutputStream(indexPath), digest))
+		{
+			output.write("window.SEARCH_INDEX = ".getBytes(StandardCharsets.UTF_8));
+			try (JsonGenerator generator = jsonFactory.createGenerator(output, JsonEncoding.UTF8))
+			{
+				generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+				generator.writeStartObject();
+				generator.writeNumberField("documents", documentCount);
+				generator.writeArrayFieldStart("terms");
+				for (String term : terms)
+				{
+					generator.writeString(term);
+				}
+				generator.writeEndArray();
+				generator.writeArrayFieldStart("postings");
+				for (String term : terms)
+				{
+					Postings list = postings.get(term);
+					generator.writeStartArray();
+					int previous = 0;
+					for (int i = 0; i < list.size; i++)
+					{
+						// Delta encoding keeps the long lists of common tokens short
+						generator.writeNumber(list.documents[i] - previous);
+						previous = list.documents[i];
+					}
+					generator.writeEndArray();
+				}
+				generator.writeEndArray();
+				generator.writeEndObject();
+			}
+			output.write(";\n".getBytes(StandardCharsets.UTF_8));
+		}
+
+		LOGGER.info("Wrote search index with " + terms.size() + " terms for " + documentCount + " document classes");
+		StringBuilder version = new StringBuilder();
+		byte[] hash = digest.digest();
+		for (int i = 0; i < 5; i++)
+		{
+			version.append(Character.forDigit((hash[i] >> 4) & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+		}
+		return INDEX_FILE + "?v=" + version;
+	}
+
+	private static MessageDigest newDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+}
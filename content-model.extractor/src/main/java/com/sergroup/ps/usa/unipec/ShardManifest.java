@@ -0,0 +1,290 @@
+package com.sergroup.ps.usa.unipec;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Splits the document classes of an organization across shard.count
+ * processes and records what each shard rendered.
+ *
+ * A class belongs to the shard picked by a hash of its name, and its page is
+ * named after the same hash, so neither depends on the number of shards or on
+ * the position of the class in the snapshot. Each shard writes a partial
+ * manifest to shards/shard-&lt;index&gt;-of-&lt;count&gt;.json in the output
+ * directory with the index entry, search terms and attribute usages of its
+ * tables; {@link ShardMerge} combines them into the index page, the search
+ * index and the where-used pages. Every partial manifest also records the
+ * SHA-256 of the document types snapshot its shard read and the number of
+ * renderable classes in it, so shards that ran against different snapshots
+ * are never merged.
+ */
+public class ShardManifest
+{
+	private static final Logger LOGGER = LoggingManager.getInstance().getLogger(ShardManifest.class);
+	private static final ObjectMapper mapper = new ObjectMapper();
+	public static final String DIRECTORY = "shards";
+	private static final int VERSION = 2;
+
+	/**
+	 * One table as recorded by its shard. Position is the place of the class
+	 * among all renderable classes of the snapshot, counted from 0, which
+	 * orders the merged index like an unsharded run. Attributes hold the UUIDs of the known
+	 * attributes, flags their WhereUsedIndex mandatory/readonly bits.
+	 */
+	public record Entry(int position, TableSummary summary, Collection<String> searchTerms, String[] attributes, int[] flags)
+	{
+	}
+
+	private record Partial(String snapshot, int classes, List<Entry> entries)
+	{
+	}
+
+	/**
+	 * @return the shard, from 0 to count - 1, that renders the class
+	 */
+	public static int shardOf(String documentName, int count)
+	{
+		return (int) Long.remainderUnsigned(hash(documentName), count);
+	}
+
+	/**
+	 * The page of a class, named after the hash of its name. Occurrence counts
+	 * classes with the same name in snapshot order, so a repeated name still
+	 * gets a page of its own.
+	 */
+	public static String pageName(String documentName, int occurrence)
+	{
+		StringBuilder name = new StringBuilder("table_");
+		long hash = hash(documentName);
+		for (int shift = 60; shift >= 0; shift -= 4)
+		{
+			name.append(Character.forDigit((int) (hash >>> shift) & 0xF, 16));
+		}
+		if (occurrence > 1)
+		{
+			name.append('_').append(occurrence);
+		}
+		return name.append(".html").toString();
+	}
+
+	// The first 8 bytes of the SHA-256 of the name, the same in every JVM and on every host
+	private static long hash(String documentName)
+	{
+		byte[] digest = newDigest().digest(documentName.getBytes(StandardCharsets.UTF_8));
+		long hash = 0;
+		for (int i = 0; i < 8; i++)
+		{
+			hash = hash << 8 | (digest[i] & 0xFF);
+		}
+		return hash;
+	}
+
+	public static Path path(String outputDirectory, int index, int count)
+	{
+		return Paths.get(outputDirectory, DIRECTORY, "shard-" + index + "-of-" + count + ".json");
+	}
+
+	/**
+	 * @param snapshot hex SHA-256 of the document types snapshot the shard rendered
+	 * @param classes  number of renderable classes in that snapshot, across all shards
+	 */
+	public static void save(String outputDirectory, int index, int count, String snapshot, int classes, List<Entry> entries) throws IOException
+	{
+		Path manifestPath = path(outputDirectory, index, count);
+		Files.createDirectories(manifestPath.getParent());
+
+		// Write to a temporary file first so the merge never reads a truncated manifest
+		Path tempPath = Paths.get(manifestPath + ".tmp");
+		try (JsonGenerator generator = mapper.getFactory().createGenerator(tempPath.toFile(), JsonEncoding.UTF8))
+		{
+			generator.writeStartObject();
+			generator.writeNumberField("version", VERSION);
+			generator.writeNumberField("shard", index);
+			generator.writeNumberField("count", count);
+			generator.writeStringField("snapshot", snapshot);
+			generator.writeNumberField("classes", classes);
+			generator.writeArrayFieldStart("tables");
+			for (Entry entry : entries)
+			{
+				TableSummary table = entry.summary();
+				generator.writeStartObject();
+				generator.writeNumberField("position", entry.position());
+				generator.writeStringField("documentName", table.getDocumentName());
+				generator.writeStringField("fileName", table.getFileName());
+				generator.writeNumberField("attributeCount", table.getAttributeCount());
+				generator.writeStringField("contentHash", table.getContentHash());
+				generator.writeArrayFieldStart("terms");
+				for (String term : entry.searchTerms())
+				{
+					generator.writeString(term);
+				}
+				generator.writeEndArray();
+				// Pairs of UUID and flags
+				generator.writeArrayFieldStart("attributes");
+				for (int i = 0; i < entry.attributes().length; i++)
+				{
+					generator.writeString(entry.attributes()[i]);
+					generator.writeNumber(entry.flags()[i]);
+				}
+				generator.writeEndArray();
+				generator.writeEndObject();
+			}
+			generator.writeEndArray();
+			generator.writeEndObject();
+		}
+		Files.move(tempPath, manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		LOGGER.info("Saved partial manifest of shard " + index + " of " + count + " with " + entries.size() + " tables to " + manifestPath);
+	}
+
+	/**
+	 * Loads the previous run of one shard for incremental rendering, keyed by
+	 * file name. Returns an empty map when there is none or it cannot be read.
+	 */
+	public static Map<String, TableSummary> loadSummaries(String outputDirectory, int index, int count)
+	{
+		Map<String, TableSummary> tables = new HashMap<>();
+		Path manifestPath = path(outputDirectory, index, count);
+		if (!Files.exists(manifestPath))
+		{
+			LOGGER.info("No partial manifest of shard " + index + " of " + count + " found, rendering all its tables");
+			return tables;
+		}
+		try
+		{
+			for (Entry entry : read(manifestPath).entries())
+			{
+				tables.put(entry.summary().getFileName(), entry.summary());
+			}
+		} catch (IOException e)
+		{
+			LOGGER.warning("Could not read partial manifest " + manifestPath + ", rendering all tables: " + e.getMessage());
+			tables.clear();
+		}
+		return tables;
+	}
+
+	/**
+	 * Loads the partial manifests of all shards, ordered like the classes in the snapshot.
+	 *
+	 * @throws IOException if the manifest of any shard is missing or unreadable,
+	 *                     if the shards rendered different snapshots, or if
+	 *                     their tables do not hold every position of the
+	 *                     snapshot exactly once
+	 */
+	public static List<Entry> loadAll(String outputDirectory, int count) throws IOException
+	{
+		List<Entry> entries = new ArrayList<>();
+		Partial first = null;
+		for (int index = 0; index < count; index++)
+		{
+			Path manifestPath = path(outputDirectory, index, count);
+			if (!Files.exists(manifestPath))
+			{
+				throw new IOException("Partial manifest of shard " + index + " of " + count + " is missing: " + manifestPath);
+			}
+			Partial partial = read(manifestPath);
+			if (first == null)
+			{
+				first = partial;
+			} else if (!first.snapshot().equals(partial.snapshot()) || first.classes() != partial.classes())
+			{
+				throw new IOException("Shard " + index + " of " + count + " rendered snapshot " + partial.snapshot() + " with " + partial.classes()
+						+ " classes, but shard 0 rendered snapshot " + first.snapshot() + " with " + first.classes() + " classes");
+			}
+			entries.addAll(partial.entries());
+		}
+		entries.sort(Comparator.comparingInt(Entry::position));
+
+		int classes = first != null ? first.classes() : 0;
+		if (entries.size() != classes)
+		{
+			throw new IOException("The partial manifests hold " + entries.size() + " tables, but the snapshot has " + classes + " renderable classes");
+		}
+		for (int position = 0; position < classes; position++)
+		{
+			if (entries.get(position).position() != position)
+			{
+				throw new IOException("The partial manifests have no table at position " + position + " of " + classes + " but "
+						+ entries.get(position).position() + " instead");
+			}
+		}
+		return entries;
+	}
+
+	private static Partial read(Path manifestPath) throws IOException
+	{
+		JsonNode root = mapper.readTree(manifestPath.toFile());
+		if (root.path("version").asInt() != VERSION)
+		{
+			throw new IOException("Unsupported partial manifest version " + root.path("version").asText() + " in " + manifestPath);
+		}
+		if (!root.path("snapshot").isTextual() || !root.path("classes").isInt())
+		{
+			throw new IOException("Partial manifest " + manifestPath + " does not identify its snapshot");
+		}
+
+		List<Entry> entries = new ArrayList<>();
+		for (JsonNode table : root.path("tables"))
+		{
+			List<String> terms = new ArrayList<>(table.path("terms").size());
+			for (JsonNode term : table.path("terms"))
+			{
+				terms.add(term.asText());
+			}
+			JsonNode usages = table.path("attributes");
+			String[] attributes = new String[usages.size() / 2];
+			int[] flags = new int[attributes.length];
+			for (int i = 0; i < attributes.length; i++)
+			{
+				attributes[i] = usages.get(2 * i).asText();
+				flags[i] = usages.get(2 * i + 1).asInt();
+			}
+			TableSummary summary = new TableSummary(table.get("documentName").asText(), table.get("fileName").asText(), table.get("attributeCount").asInt(),
+					table.get("contentHash").isNull() ? null : table.get("contentHash").asText());
+			entries.add(new Entry(table.get("position").asInt(), summary, terms, attributes, flags));
+		}
+		return new Partial(root.get("snapshot").asText(), root.get("classes").asInt(), entries);
+	}
+
+	/**
+	 * @return the digest that fingerprints a document types snapshot, see {@link #fingerprint(MessageDigest)}
+	 */
+	static MessageDigest newDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	static String fingerprint(MessageDigest digest)
+	{
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest())
+		{
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+}
@@ -0,0 +1,53 @@
+package com.sergroup.ps.usa.unipec;
+
+import java.util.logging.Logger;
+
+/**
+ * Merge step of a sharded run: once every shard has rendered its pages and
+ * they have been collected in one output directory, writes the index page,
+ * the search index and the where-used pages from the partial manifests of
+ * all shards. Uses the same configuration as the shards; pass an
+ * organization name to merge one of the profiles of a batch configuration.
+ *
+ * Exits with status 1 if the manifest of any shard is missing or the merge failed.
+ *
+ * Usage: ShardMerge [organization]
+ */
+public class ShardMerge
+{
+	private static final Logger LOGGER = LoggingManager.getInstance().getLogger(ShardMerge.class);
+
+	public static void main(String[] args)
+	{
+		ConfigurationManager config = ConfigurationManager.getInstance();
+		if (args.length > 0)
+		{
+			config = config.forProfile(args[0]);
+		}
+
+		RunMetrics metrics = new RunMetrics(config);
+		boolean success = false;
+		try
+		{
+			AttributeDefinitionsCache definitions = new AttributeDefinitionsCache(config);
+			if (Boolean.parseBoolean(config.getProperty("output.whereUsed", "true")))
+			{
+				long loadStart = System.nanoTime();
+				definitions.loadAttributeDefinitionsFromFile(config.getProperty("attribute.definitions.path"));
+				metrics.recordPhase("load_attribute_definitions", loadStart);
+			}
+			success = new JsonToHtmlTableConverter(config, definitions).merge(metrics);
+		} catch (Exception e)
+		{
+			LOGGER.severe("Error in merge: " + e.getMessage());
+			e.printStackTrace();
+		} finally
+		{
+			metrics.write(success);
+		}
+		if (!success)
+		{
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package com.sergroup.ps.usa.unipec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An immutable in-memory copy of the generated site, as served by
+ * ContentModelServer. Each page is held with its gzip-compressed form and an
+ * ETag, both computed once when the page is loaded. A new SiteCache is built
+ * from the output directory after every refresh and replaces the old one as a
+ * whole, so requests see either the previous or the next version of the site.
+ */
+public class SiteCache
+{
+	private static final Logger LOGGER = LoggingManager.getInstance().getLogger(SiteCache.class);
+	// Only worth compressing above roughly one network packet
+	private static final int MIN_GZIP_SIZE = 1024;
+
+	public record Page(byte[] content, byte[] gzipContent, String etag, String contentType, long size, long lastModified)
+	{
+		/**
+		 * The strong ETag of the gzip representation, which must differ from the
+		 * one of the identity representation.
+		 */
+		public String gzipEtag()
+		{
+			return etag.substring(0, etag.length() - 1) + "-gz\"";
+		}
+	}
+
+	private final Map<String, Page> pages;
+
+	private SiteCache(Map<String, Page> pages)
+	{
+		this.pages = pages;
+	}
+
+	public static SiteCache empty()
+	{
+		return new SiteCache(Collections.emptyMap());
+	}
+
+	/**
+	 * Loads the site files below the output directory, leaving out the
+	 * bookkeeping of the renderer such as manifest.json and the shard
+	 * manifests, which must not be published. Files whose size and
+	 * modification time match a page of the previous cache are taken over
+	 * without reading or compressing them again, so unchanged tables cost
+	 * nothing after an incremental render.
+	 */
+	public static SiteCache load(String outputDirectory, SiteCache previous) throws IOException
+	{
+		Path root = Paths.get(outputDirectory);
+		Map<String, Page> pages = new HashMap<>();
+		int reused = 0;
+
+		try (Stream<Path> files = Files.walk(root))
+		{
+			for (Path file : (Iterable<Path>) files::iterator)
+			{
+				BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+				// Skip directories and the temporary files of interrupted writes
+				if (!attributes.isRegularFile() || file.getFileName().toString().endsWith(".part"))
+				{
+					continue;
+				}
+
+				String path = root.relativize(file).toString().replace('\\', '/');
+				if (!isSiteFile(path))
+				{
+					continue;
+				}
+				long lastModified = attributes.lastModifiedTime().toMillis();
+				Page page = previous.pages.get(path);
+				if (page != null && page.size() == attributes.size() && page.lastModified() == lastModified)
+				{
+					reused++;
+				} else
+				{
+					page = createPage(Files.readAllBytes(file), contentType(path), lastModified);
+				}
+				pages.put(path, page);
+			}
+		}
+
+		LOGGER.info("Loaded " + pages.size() + " pages into the site cache (" + reused + " unchanged)");
+		return new SiteCache(pages);
+	}
+
+	/**
+	 * The allow-list of published files: the pages, the asset bundle, the
+	 * search index, the where-used pages and the change report.
+	 */
+	static boolean isSiteFile(String path)
+	{
+		if (path.startsWith("assets/"))
+		{
+			return path.indexOf('/', "assets/".length()) < 0;
+		}
+		if (path.startsWith("attributes/"))
+		{
+			return path.endsWith(".html") && path.indexOf('/', "attributes/".length()) < 0;
+		}
+		if (path.indexOf('/') >= 0)
+		{
+			return false;
+		}
+		return path.endsWith(".html") || path.equals(SearchIndexBuilder.INDEX_FILE) || path.equals(SnapshotDiff.REPORT_JSON);
+	}
+
+	private static Page createPage(byte[] content, String contentType, long lastModified) throws IOException
+	{
+		byte[] gzipContent = null;
+		if (content.length >= MIN_GZIP_SIZE)
+		{
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 4);
+			try (GZIPOutputStream gzip = new GZIPOutputStream(compressed))
+			{
+				gzip.write(content);
+			}
+			if (compressed.size() < content.length)
+			{
+				gzipContent = compressed.toByteArray();
+			}
+		}
+		return new Page(content, gzipContent, etag(content), contentType, content.length, lastModified);
+	}
+
+	public Page get(String path)
+	{
+		return pages.get(path);
+	}
+
+	public int size()
+	{
+		return pages.size();
+	}
+
+	private static String contentType(String path)
+	{
+		if (path.endsWith(".html"))
+		{
+			return "text/html; charset=utf-8";
+		} else if (path.endsWith(".css"))
+		{
+			return "text/css; charset=utf-8";
+		} else if (path.endsWith(".js"))
+		{
+			return "application/javascript; charset=utf-8";
+		} else if (path.endsWith(".json"))
+		{
+			return "application/json";
+		}
+		return "application/octet-stream";
+	}
+
+	private static String etag(byte[] content)
+	{
+		try
+		{
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+			StringBuilder hex = new StringBuilder("\"");
+			for (int i = 0; i < 8; i++)
+			{
+				hex.append(Character.forDigit((digest[i] >> 4) & 0xF, 16)).append(Character.forDigit(digest[i] & 0xF, 16));
+			}
+			return hex.append('"').toString();
+		} catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+}
@@ -0,0 +1,481 @@
+package com.sergroup.ps.usa.unipec;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Compares the current document types and attribute definitions snapshots with
+ * the ones seen by the previous run, kept in diff.baseline.directory, and writes
+ * changes.json and changes.html to the output directory.
+ *
+ * Both sides are indexed in hash maps (attributes by UUID, classes by name and
+ * occurrence), so the comparison is linear in the size of the snapshots. A class
+ * name that appears more than once is matched occurrence by occurrence, as each
+ * occurrence gets a page of its own. Classes are compared on their allowed
+ * attributes and the mandatory/readonly flags of each. The report lists
+ * everything in snapshot order.
+ */
+public class SnapshotDiff
+{
+	private static final Logger LOGGER = LoggingManager.getInstance().getLogger(SnapshotDiff.class);
+	private static final ObjectMapper mapper = new ObjectMapper();
+	public static final String REPORT_HTML = "changes.html";
+	public static final String REPORT_JSON = "changes.json";
+	private static final int MANDATORY = 2;
+	private static final int READONLY = 1;
+
+	// The allowed attributes of a class in the previous snapshot
+	private record ClassAttributes(String[] uuids, byte[] flags)
+	{
+	}
+
+	// Occurrence counts classes of the same name in snapshot order, from 1
+	private record ClassKey(String name, int occurrence)
+	{
+	}
+
+	/**
+	 * Compares the snapshots of the organization the configuration points at.
+	 */
+	public static void run(ConfigurationManager config) throws IOException
+	{
+		if (!Boolean.parseBoolean(config.getProperty("diff.enabled", "true")))
+		{
+			return;
+		}
+
+		Path documentTypes = Paths.get(config.getProperty("input.json.path"));
+		Path attributeDefinitions = Paths.get(config.getProperty("attribute.definitions.path"));
+		Path baselineDirectory = baselineDirectory(config);
+		Path baselineDocumentTypes = baselineDirectory.resolve(documentTypes.getFileName());
+		Path baselineAttributeDefinitions = baselineDirectory.resolve(attributeDefinitions.getFileName());
+		Path outputDirectory = Paths.get(config.getProperty("output.directory", "output"));
+
+		if (!Files.exists(baselineDocumentTypes) || !Files.exists(baselineAttributeDefinitions))
+		{
+			LOGGER.info("No previous snapshot in " + baselineDirectory + ", recording the current one for the next run");
+			saveBaseline(documentTypes, baselineDocumentTypes);
+			saveBaseline(attributeDefinitions, baselineAttributeDefinitions);
+			return;
+		}
+		if (Files.mismatch(documentTypes, baselineDocumentTypes) == -1 && Files.mismatch(attributeDefinitions, baselineAttributeDefinitions) == -1)
+		{
+			LOGGER.info("Snapshots are unchanged since the previous run, keeping the existing change report");
+			return;
+		}
+
+		long start = System.nanoTime();
+		ObjectNode report = compare(baselineDocumentTypes, documentTypes, baselineAttributeDefinitions, attributeDefinitions);
+
+		Files.createDirectories(outputDirectory);
+		mapper.writerWithDefaultPrettyPrinter().writeValue(outputDirectory.resolve(REPORT_JSON).toFile(), report);
+		writeHtml(outputDirectory.resolve(REPORT_HTML), report, new StaticAssets(config));
+
+		saveBaseline(documentTypes, baselineDocumentTypes);
+		saveBaseline(attributeDefinitions, baselineAttributeDefinitions);
+		LOGGER.info(String.format("Compared snapshots in %d ms: attributes %d added, %d removed, %d modified; classes %d added, %d removed, %d modified",
+				(System.nanoTime() - start) / 1_000_000,
+				report.path("attributes").path("added").size(), report.path("attributes").path("removed").size(), report.path("attributes").path("modified").size(),
+				report.path("classes").path("added").size(), report.path("classes").path("removed").size(), report.path("classes").path("modified").size()));
+	}
+
+	/**
+	 * Where the snapshots of the previous run are kept, by default next to the
+	 * document types snapshot.
+	 */
+	static Path baselineDirectory(ConfigurationManager config)
+	{
+		Path documentTypes = Paths.get(config.getProperty("input.json.path"));
+		return Paths.get(config.getProperty("diff.baseline.directory", documentTypes.toAbsolutePath().resolveSibling("previous").toString()));
+	}
+
+	/**
+	 * @return the report written to changes.json
+	 */
+	static ObjectNode compare(Path previousDocumentTypes, Path currentDocumentTypes, Path previousAttributeDefinitions, Path currentAttributeDefinitions)
+			throws IOException
+	{
+		Map<String, AttributeDefinition> previousAttributes = readAttributeDefinitions(previousAttributeDefinitions);
+		Map<String, AttributeDefinition> currentAttributes = readAttributeDefinitions(currentAttributeDefinitions);
+
+		ObjectNode report = mapper.createObjectNode();
+		report.put("generated", Instant.now().toString());
+		report.set("attributes", compareAttributes(previousAttributes, currentAttributes));
+		report.set("classes", compareClasses(previousDocumentTypes, currentDocumentTypes, previousAttributes, currentAttributes));
+		return report;
+	}
+
+	private static Map<String, AttributeDefinition> readAttributeDefinitions(Path path) throws IOException
+	{
+		Map<String, AttributeDefinition> definitions = new LinkedHashMap<>();
+		try (MappingIterator<AttributeDefinition> iterator = mapper.readerFor(AttributeDefinition.class).readValues(path.toFile()))
+		{
+			while (iterator.hasNextValue())
+			{
+				AttributeDefinition definition = iterator.nextValue();
+				definitions.put(definition.uuid(), definition);
+			}
+		}
+		return definitions;
+	}
+
+	private static ObjectNode compareAttributes(Map<String, AttributeDefinition> previous, Map<String, AttributeDefinition> current)
+	{
+		ObjectNode result = mapper.createObjectNode();
+		ArrayNode added = result.putArray("added");
+		ArrayNode removed = result.putArray("removed");
+		ArrayNode modified = result.putArray("modified");
+
+		for (AttributeDefinition definition : current.values())
+		{
+			AttributeDefinition before = previous.get(definition.uuid());
+			if (before == null)
+			{
+				added.add(describe(definition));
+			} else if (!before.equals(definition))
+			{
+				ObjectNode entry = describe(definition);
+				ArrayNode changes = entry.putArray("changes");
+				addChange(changes, "name", before.name(), definition.name());
+				addChange(changes, "shortName", before.shortName(), definition.shortName());
+				addChange(changes, "attributeDataType", before.attributeDataType(), definition.attributeDataType());
+				addChange(changes, "defaultValue", before.defaultValue(), definition.defaultValue());
+				addChange(changes, "length", String.valueOf(before.length()), String.valueOf(definition.length()));
+				addChange(changes, "multivalueType", before.multivalueType(), definition.multivalueType());
+				addChange(changes, "fulltextUsage", before.fulltextUsage(), definition.fulltextUsage());
+				modified.add(entry);
+			}
+		}
+		for (AttributeDefinition definition : previous.values())
+		{
+			if (!current.containsKey(definition.uuid()))
+			{
+				removed.add(describe(definition));
+			}
+		}
+		return result;
+	}
+
+	private static ObjectNode describe(AttributeDefinition definition)
+	{
+		ObjectNode node = mapper.createObjectNode();
+		node.put("uuid", definition.uuid());
+		node.put("name", definition.name());
+		node.put("attributeDataType", definition.attributeDataType());
+		return node;
+	}
+
+	private static void addChange(ArrayNode changes, String field, String before, String after)
+	{
+		if (!Objects.equals(before, after))
+		{
+			changes.addObject().put("field", field).put("previous", before).put("current", after);
+		}
+	}
+
+	private static ObjectNode compareClasses(Path previousPath, Path currentPath, Map<String, AttributeDefinition> previousAttributes,
+			Map<String, AttributeDefinition> currentAttributes) throws IOException
+	{
+		// UUIDs repeat across classes, so share one String per UUID
+		Map<String, String> uuids = new HashMap<>();
+		Map<ClassKey, ClassAttributes> previousClasses = new LinkedHashMap<>();
+		Map<String, Integer> previousOccurrences = new HashMap<>();
+		readClasses(previousPath, (name, attributes) -> {
+			String[] classUuids = new String[attributes.size()];
+			byte[] flags = new byte[attributes.size()];
+			for (int i = 0; i < attributes.size(); i++)
+			{
+				JsonNode attribute = attributes.get(i);
+				String uuid = attribute.path("attributeDefinitionUUID").asText();
+				classUuids[i] = uuids.computeIfAbsent(uuid, key -> key);
+				flags[i] = flags(attribute);
+			}
+			previousClasses.put(new ClassKey(name, previousOccurrences.merge(name, 1, Integer::sum)), new ClassAttributes(classUuids, flags));
+		});
+
+		ObjectNode result = mapper.createObjectNode();
+		ArrayNode added = result.putArray("added");
+		ArrayNode removed = result.putArray("removed");
+		ArrayNode modified = result.putArray("modified");
+
+		Map<String, Integer> currentOccurrences = new HashMap<>();
+		readClasses(currentPath, (name, attributes) -> {
+			ClassKey key = new ClassKey(name, currentOccurrences.merge(name, 1, Integer::sum));
+			ClassAttributes before = previousClasses.remove(key);
+			if (before == null)
+			{
+				describe(added, key).put("attributeCount", attributes.size());
+				return;
+			}
+
+			Map<String, Byte> previousFlags = new LinkedHashMap<>(before.uuids().length * 2);
+			for (int i = 0; i < before.uuids().length; i++)
+			{
+				previousFlags.put(before.uuids()[i], before.flags()[i]);
+			}
+
+			// A class may list an attribute more than once; like the maps above, the last entry wins
+			Map<String, Byte> currentFlags = new LinkedHashMap<>(attributes.size() * 2);
+			for (JsonNode attribute : attributes)
+			{
+				currentFlags.put(attribute.path("attributeDefinitionUUID").asText(), flags(attribute));
+			}
+
+			List<ObjectNode> changes = new ArrayList<>();
+			for (Map.Entry<String, Byte> entry : currentFlags.entrySet())
+			{
+				String uuid = entry.getKey();
+				byte flags = entry.getValue();
+				Byte previous = previousFlags.remove(uuid);
+				if (previous == null)
+				{
+					changes.add(attributeChange("added", uuid, currentAttributes, previousAttributes).put("mandatory", (flags & MANDATORY) != 0)
+							.put("readonly", (flags & READONLY) != 0));
+				} else if (previous != flags)
+				{
+					ObjectNode change = attributeChange("flagsChanged", uuid, currentAttributes, previousAttributes);
+					addFlagChange(change, "mandatory", previous, flags, MANDATORY);
+					addFlagChange(change, "readonly", previous, flags, READONLY);
+					changes.add(change);
+				}
+			}
+			for (String uuid : previousFlags.keySet())
+			{
+				changes.add(attributeChange("removed", uuid, currentAttributes, previousAttributes));
+			}
+
+			if (!changes.isEmpty())
+			{
+				describe(modified, key).putArray("changes").addAll(changes);
+			}
+		});
+
+		for (ClassKey key : previousClasses.keySet())
+		{
+			describe(removed, key);
+		}
+		return result;
+	}
+
+	// The occurrence is only given for the repeats of a name, most names appear once
+	private static ObjectNode describe(ArrayNode list, ClassKey key)
+	{
+		ObjectNode node = list.addObject().put("name", key.name());
+		if (key.occurrence() > 1)
+		{
+			node.put("occurrence", key.occurrence());
+		}
+		return node;
+	}
+
+	private interface ClassConsumer
+	{
+		void accept(String name, JsonNode attributes);
+	}
+
+	// Streams the document types array like the converter does, one class at a time
+	private static void readClasses(Path path, ClassConsumer consumer) throws IOException
+	{
+		try (JsonParser parser = mapper.getFactory().createParser(path.toFile()))
+		{
+			if (parser.nextToken() != JsonToken.START_ARRAY)
+			{
+				throw new IOException("Expected a JSON array of document types in " + path);
+			}
+			while (parser.nextToken() == JsonToken.START_OBJECT)
+			{
+				JsonNode objectNode = mapper.readTree(parser);
+				JsonNode name = objectNode.get("name");
+				JsonNode attributes = objectNode.get("allowedAttributeDefinitions");
+				if (name != null && !name.isNull() && attributes != null && attributes.isArray())
+				{
+					consumer.accept(name.asText(), attributes);
+				}
+			}
+		}
+	}
+
+	private static byte flags(JsonNode attribute)
+	{
+		return (byte) ((attribute.path("mandatory").asBoolean() ? MANDATORY : 0) | (attribute.path("readonly").asBoolean() ? READONLY : 0));
+	}
+
+	private static ObjectNode attributeChange(String type, String uuid, Map<String, AttributeDefinition> currentAttributes,
+			Map<String, AttributeDefinition> previousAttributes)
+	{
+		AttributeDefinition definition = currentAttributes.getOrDefault(uuid, previousAttributes.get(uuid));
+		ObjectNode change = mapper.createObjectNode();
+		change.put("type", type);
+		change.put("uuid", uuid);
+		change.put("name", definition != null ? definition.name() : null);
+		return change;
+	}
+
+	private static void addFlagChange(ObjectNode change, String flag, byte previous, byte current, int mask)
+	{
+		if ((previous & mask) != (current & mask))
+		{
+			change.putObject(flag).put("previous", (previous & mask) != 0).put("current", (current & mask) != 0);
+		}
+	}
+
+	private static void saveBaseline(Path snapshot, Path baseline) throws IOException
+	{
+		Files.createDirectories(baseline.getParent());
+		Path tempPath = Paths.get(baseline + ".part");
+		Files.copy(snapshot, tempPath, StandardCopyOption.REPLACE_EXISTING);
+		Files.move(tempPath, baseline, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void writeHtml(Path path, ObjectNode report, StaticAssets assets) throws IOException
+	{
+		JsonNode attributes = report.path("attributes");
+		JsonNode classes = report.path("classes");
+
+		try (Writer page = HtmlWriter.open(path))
+		{
+			page.append("<!DOCTYPE html>\n<html>\n<head>\n")
+					.append("<title>Content Model Changes</title>\n")
+					.append(assets.tableHead(""))
+					.append("</head>\n<body>\n")
+					.append("<p><a href='index.html'>Document classes</a></p>\n")
+					.append("<h2>Content Model Changes</h2>\n")
+					.append("<p>Generated ").append(report.path("generated").asText()).append("</p>\n");
+
+			page.append("<h3>Attribute Definitions</h3>\n");
+			writeAttributeList(page, "Added", attributes.path("added"));
+			writeAttributeList(page, "Removed", attributes.path("removed"));
+			page.append("<h4>Modified (").append(String.valueOf(attributes.path("modified").size())).append(")</h4>\n");
+			if (attributes.path("modified").size() > 0)
+			{
+				page.append("<table>\n<tr><th>Attribute Name</th><th>UUID</th><th>Field</th><th>Previous</th><th>Current</th></tr>\n");
+				for (JsonNode attribute : attributes.path("modified"))
+				{
+					for (JsonNode change : attribute.path("changes"))
+					{
+						page.append("<tr><td>").append(HtmlWriter.escape(attribute.path("name").asText())).append("</td>")
+								.append("<td>").append(HtmlWriter.escape(attribute.path("uuid").asText())).append("</td>")
+								.append("<td>").append(change.path("field").asText()).append("</td>")
+								.append("<td>").append(JsonToHtmlTableConverter.formatValue(text(change.path("previous")))).append("</td>")
+								.append("<td>").append(JsonToHtmlTableConverter.formatValue(text(change.path("current")))).append("</td></tr>\n");
+					}
+				}
+				page.append("</table>\n");
+			}
+
+			page.append("<h3>Document Classes</h3>\n");
+			page.append("<h4>Added (").append(String.valueOf(classes.path("added").size())).append(")</h4>\n");
+			if (classes.path("added").size() > 0)
+			{
+				page.append("<table>\n<tr><th>Document Class</th><th>Attributes</th></tr>\n");
+				for (JsonNode added : classes.path("added"))
+				{
+					page.append("<tr><td>").append(className(added)).append("</td><td>")
+							.append(added.path("attributeCount").asText()).append("</td></tr>\n");
+				}
+				page.append("</table>\n");
+			}
+			page.append("<h4>Removed (").append(String.valueOf(classes.path("removed").size())).append(")</h4>\n");
+			if (classes.path("removed").size() > 0)
+			{
+				page.append("<table>\n<tr><th>Document Class</th></tr>\n");
+				for (JsonNode removed : classes.path("removed"))
+				{
+					page.append("<tr><td>").append(className(removed)).append("</td></tr>\n");
+				}
+				page.append("</table>\n");
+			}
+			page.append("<h4>Modified (").append(String.valueOf(classes.path("modified").size())).append(")</h4>\n");
+			if (classes.path("modified").size() > 0)
+			{
+				page.append("<table>\n<tr><th>Document Class</th><th>Attribute Name</th><th>UUID</th><th>Change</th></tr>\n");
+				for (JsonNode modified : classes.path("modified"))
+				{
+					for (JsonNode change : modified.path("changes"))
+					{
+						page.append("<tr><td>").append(className(modified)).append("</td>")
+								.append("<td>").append(JsonToHtmlTableConverter.formatValue(text(change.path("name")))).append("</td>")
+								.append("<td>").append(HtmlWriter.escape(change.path("uuid").asText())).append("</td>")
+								.append("<td>").append(describeChange(change)).append("</td></tr>\n");
+					}
+				}
+				page.append("</table>\n");
+			}
+			page.append("</body>\n</html>");
+		}
+	}
+
+	private static void writeAttributeList(Writer page, String title, JsonNode list) throws IOException
+	{
+		page.append("<h4>").append(title).append(" (").append(String.valueOf(list.size())).append(")</h4>\n");
+		if (list.size() == 0)
+		{
+			return;
+		}
+		page.append("<table>\n<tr><th>Attribute Name</th><th>UUID</th><th>Data Type</th></tr>\n");
+		for (JsonNode attribute : list)
+		{
+			page.append("<tr><td>").append(HtmlWriter.escape(attribute.path("name").asText())).append("</td>")
+					.append("<td>").append(HtmlWriter.escape(attribute.path("uuid").asText())).append("</td>")
+					.append("<td>").append(JsonToHtmlTableConverter.formatValue(text(attribute.path("attributeDataType")))).append("</td></tr>\n");
+		}
+		page.append("</table>\n");
+	}
+
+	private static String describeChange(JsonNode change)
+	{
+		switch (change.path("type").asText())
+		{
+		case "added":
+			return "Added (mandatory: " + change.path("mandatory").asBoolean() + ", readonly: " + change.path("readonly").asBoolean() + ")";
+		case "removed":
+			return "Removed";
+		default:
+			StringBuilder description = new StringBuilder();
+			for (String flag : new String[] { "mandatory", "readonly" })
+			{
+				JsonNode flip = change.path(flag);
+				if (!flip.isMissingNode())
+				{
+					if (description.length() > 0)
+					{
+						description.append(", ");
+					}
+					description.append(flag).append(": ").append(flip.path("previous").asBoolean()).append(" &rarr; ").append(flip.path("current").asBoolean());
+				}
+			}
+			return description.toString();
+		}
+	}
+
+	private static String className(JsonNode entry)
+	{
+		String name = HtmlWriter.escape(entry.path("name").asText());
+		return entry.has("occurrence") ? name + " (" + entry.path("occurrence").asInt() + ")" : name;
+	}
+
+	private static String text(JsonNode node)
+	{
+		return node.isNull() || node.isMissingNode() ? null : node.asText();
+	}
+}
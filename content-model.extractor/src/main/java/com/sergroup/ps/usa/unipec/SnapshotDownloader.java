@@ -0,0 +1,467 @@
+package com.sergroup.ps.usa.unipec;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * Downloads REST responses into the snapshot files under data/, honouring the
+ * {@link FetchPolicy} of the configuration it was created with. The ETag and
+ * Last-Modified validators of each saved snapshot are kept in a sidecar file
+ * next to it. The HTTP client and the writer threads are shared by all
+ * instances.
+ */
+public class SnapshotDownloader
+{
+	private static final Logger LOGGER = LoggingManager.getInstance().getLogger(SnapshotDownloader.class);
+	private static final String VALIDATORS_SUFFIX = ".validators";
+	private static final JsonFactory jsonFactory = new JsonFactory();
+	// Response bodies are copied to disk on these threads rather than on the HTTP client's own
+	private static final ExecutorService writerExecutor = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "snapshot-writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final FetchPolicy fetchPolicy;
+	private final Duration ttl;
+	private final boolean prettyPrint;
+
+	public SnapshotDownloader(ConfigurationManager config)
+	{
+		fetchPolicy = FetchPolicy.fromConfiguration(config);
+		ttl = Duration.ofMinutes(config.getIntProperty("fetch.ttl.minutes", 0));
+		prettyPrint = Boolean.parseBoolean(config.getProperty("data.json.pretty", "false"));
+	}
+
+	@Override
+	public String toString()
+	{
+		return fetchPolicy + (fetchPolicy == FetchPolicy.REVALIDATE ? ", TTL: " + ttl.toMinutes() + " minutes" : "");
+	}
+
+	public FetchPolicy getFetchPolicy()
+	{
+		return fetchPolicy;
+	}
+
+	/**
+	 * @return true if fetching any of the given snapshots will contact the server
+	 */
+	public boolean requiresServer(Path... snapshots)
+	{
+		if (fetchPolicy == FetchPolicy.OFFLINE)
+		{
+			return false;
+		}
+		for (Path snapshot : snapshots)
+		{
+			if (!isFresh(snapshot))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Starts fetching one snapshot on the shared HTTP client. The returned
+	 * future completes once the snapshot on disk is current, or completes
+	 * exceptionally with an {@link UncheckedIOException} if the request fails.
+	 */
+	public CompletableFuture<Void> fetchAsync(String url, String jwt, Path snapshot, String description, RunMetrics metrics)
+	{
+		CompletableFuture<Void> skipped = skipFetch(snapshot, description);
+		if (skipped != null)
+		{
+			return skipped;
+		}
+
+		HttpRequest request = buildRequest(url, jwt, snapshot);
+		LOGGER.info("Fetching " + description + "...");
+		long fetchStart = System.nanoTime();
+		return HttpClientProvider.getClient().sendAsync(request, HttpResponse.BodyHandlers.ofInputStream()).thenAcceptAsync(response -> {
+			try (InputStream body = response.body())
+			{
+				saveResponse(response, body, snapshot, description);
+			} catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			} finally
+			{
+				metrics.recordPhase("fetch_" + description.replace(' ', '_'), fetchStart);
+			}
+		}, writerExecutor);
+	}
+
+	/**
+	 * Like {@link #fetchAsync}, but completes as soon as the response headers
+	 * have arrived, with a stream of the decoded body for the caller to parse
+	 * while the rest is still downloading. Completes with null if the snapshot on
+	 * disk is current, because the fetch policy skipped the request or the server
+	 * answered 304.
+	 *
+	 * The response is only read as fast as the caller consumes the stream, so a
+	 * slow consumer holds back the download instead of buffering it in memory.
+	 */
+	public CompletableFuture<SnapshotStream> openAsync(String url, String jwt, Path snapshot, String description, RunMetrics metrics)
+	{
+		CompletableFuture<Void> skipped = skipFetch(snapshot, description);
+		if (skipped != null)
+		{
+			return skipped.thenApply(ignored -> null);
+		}
+
+		HttpRequest request = buildRequest(url, jwt, snapshot);
+		LOGGER.info("Streaming " + description + "...");
+		long fetchStart = System.nanoTime();
+		return HttpClientProvider.getClient().sendAsync(request, HttpResponse.BodyHandlers.ofInputStream()).thenApply(response -> {
+			try
+			{
+				if (response.statusCode() != 200)
+				{
+					try (InputStream body = response.body())
+					{
+						saveResponse(response, body, snapshot, description);
+					}
+					metrics.recordPhase("fetch_" + description.replace(' ', '_'), fetchStart);
+					return null;
+				}
+				return new SnapshotStream(response, snapshot, description, metrics, fetchStart);
+			} catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	// A completed future if the fetch policy means there is nothing to request, otherwise null
+	private CompletableFuture<Void> skipFetch(Path snapshot, String description)
+	{
+		if (fetchPolicy == FetchPolicy.OFFLINE)
+		{
+			if (!Files.exists(snapshot))
+			{
+				return CompletableFuture.failedFuture(
+						new UncheckedIOException(new IOException("Offline fetch policy requires an existing " + description + " snapshot at " + snapshot)));
+			}
+			LOGGER.info("Offline: using existing " + description + " snapshot " + snapshot);
+			return CompletableFuture.completedFuture(null);
+		}
+
+		if (isFresh(snapshot))
+		{
+			LOGGER.info("Snapshot " + snapshot + " is younger than the TTL, skipping fetch of " + description);
+			return CompletableFuture.completedFuture(null);
+		}
+		return null;
+	}
+
+	private HttpRequest buildRequest(String url, String jwt, Path snapshot)
+	{
+		HttpRequest.Builder builder = HttpRequest.newBuilder().uri(URI.create(url)).header("Authorization", "Bearer " + jwt).header("Accept", "application/json")
+				.header("Accept-Encoding", "gzip").GET();
+		Properties validators = fetchPolicy == FetchPolicy.REVALIDATE && Files.exists(snapshot) ? loadValidators(snapshot) : new Properties();
+		if (validators.getProperty("ETag") != null)
+		{
+			builder.header("If-None-Match", validators.getProperty("ETag"));
+		}
+		if (validators.getProperty("Last-Modified") != null)
+		{
+			builder.header("If-Modified-Since", validators.getProperty("Last-Modified"));
+		}
+		HttpRequest request = builder.build();
+
+		// Log the curl equivalent
+		HttpRequestLogger.logRequest(request, null);
+		return request;
+	}
+
+	/**
+	 * The decoded body of a snapshot response. Everything read from it is also
+	 * written to a temporary file next to the snapshot. {@link #complete()} reads
+	 * the rest of the response and replaces the snapshot with it; closing the
+	 * stream without completing it discards the download and keeps the old snapshot.
+	 */
+	public static class SnapshotStream extends FilterInputStream
+	{
+		private final HttpResponse<InputStream> response;
+		private final Path snapshot;
+		private final Path tempFile;
+		private final String description;
+		private final RunMetrics metrics;
+		private final long fetchStart;
+		private final OutputStream copy;
+		private boolean completed;
+		private boolean closed;
+
+		private SnapshotStream(HttpResponse<InputStream> response, Path snapshot, String description, RunMetrics metrics, long fetchStart) throws IOException
+		{
+			super(decodedBody(response, response.body()));
+			this.response = response;
+			this.snapshot = snapshot;
+			this.description = description;
+			this.metrics = metrics;
+			this.fetchStart = fetchStart;
+			Files.createDirectories(snapshot.toAbsolutePath().getParent());
+			tempFile = Paths.get(snapshot.toString() + ".part");
+			copy = new BufferedOutputStream(Files.newOutputStream(tempFile), 64 * 1024);
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			int b = in.read();
+			if (b >= 0)
+			{
+				copy.write(b);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException
+		{
+			int n = in.read(buffer, offset, length);
+			if (n > 0)
+			{
+				copy.write(buffer, offset, n);
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException
+		{
+			// Skipped bytes must still reach the snapshot, so read them
+			byte[] buffer = new byte[(int) Math.min(Math.max(n, 0), 8192)];
+			long skipped = 0;
+			while (skipped < n)
+			{
+				int count = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+				if (count < 0)
+				{
+					break;
+				}
+				skipped += count;
+			}
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported()
+		{
+			return false;
+		}
+
+		/**
+		 * Reads whatever the caller left unread and moves the downloaded snapshot
+		 * into place, together with its validators.
+		 */
+		public void complete() throws IOException
+		{
+			in.transferTo(copy);
+			copy.close();
+			Files.move(tempFile, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			saveValidators(snapshot, response.headers());
+			completed = true;
+			metrics.recordPhase("fetch_" + description.replace(' ', '_'), fetchStart);
+			LOGGER.info("Successfully saved " + description + " to " + snapshot);
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			if (closed)
+			{
+				return;
+			}
+			closed = true;
+			try
+			{
+				in.close();
+				copy.close();
+			} finally
+			{
+				if (!completed)
+				{
+					Files.deleteIfExists(tempFile);
+					LOGGER.warning("Discarded incomplete download of " + description + ", keeping " + snapshot);
+				}
+			}
+		}
+	}
+
+	private void saveResponse(HttpResponse<?> response, InputStream body, Path snapshot, String description) throws IOException
+	{
+		if (response.statusCode() == 304)
+		{
+			// Restart the TTL so the next run can skip the request entirely. The validators file is
+			// touched rather than the snapshot, whose timestamp marks when its content last changed.
+			Files.setLastModifiedTime(validatorsPath(snapshot), FileTime.from(Instant.now()));
+			LOGGER.info("Server reports " + description + " unchanged, keeping " + snapshot);
+			return;
+		}
+
+		if (response.statusCode() != 200)
+		{
+			String errorMsg = "Failed to fetch " + description + ". Status code: " + response.statusCode();
+			LOGGER.severe(errorMsg);
+			throw new IOException(errorMsg);
+		}
+
+		// Stream into a temporary file next to the snapshot so a failed download never replaces a good snapshot
+		Path parent = snapshot.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		Path tempFile = Paths.get(snapshot.toString() + ".part");
+		try
+		{
+			try (InputStream input = decodedBody(response, body); OutputStream output = Files.newOutputStream(tempFile))
+			{
+				if (prettyPrint)
+				{
+					copyPretty(input, output);
+				} else
+				{
+					input.transferTo(output);
+				}
+			}
+			Files.move(tempFile, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally
+		{
+			Files.deleteIfExists(tempFile);
+		}
+		saveValidators(snapshot, response.headers());
+		LOGGER.info("Successfully saved " + description + " to " + snapshot);
+	}
+
+	private static InputStream decodedBody(HttpResponse<?> response, InputStream body) throws IOException
+	{
+		String encoding = response.headers().firstValue("Content-Encoding").orElse("identity");
+		if ("gzip".equalsIgnoreCase(encoding.trim()))
+		{
+			return new GZIPInputStream(body, 64 * 1024);
+		}
+		return body;
+	}
+
+	// Re-indents the JSON token by token, without building a tree of the payload
+	private static void copyPretty(InputStream input, OutputStream output) throws IOException
+	{
+		try (JsonParser parser = jsonFactory.createParser(input); JsonGenerator generator = jsonFactory.createGenerator(output))
+		{
+			generator.useDefaultPrettyPrinter();
+			while (parser.nextToken() != null)
+			{
+				generator.copyCurrentEvent(parser);
+			}
+		}
+	}
+
+	/**
+	 * Waits for all fetches and rethrows the first failure as the IOException that caused it.
+	 */
+	public static void awaitAll(CompletableFuture<?>... fetches) throws IOException
+	{
+		try
+		{
+			CompletableFuture.allOf(fetches).join();
+		} catch (CompletionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof UncheckedIOException)
+			{
+				throw ((UncheckedIOException) cause).getCause();
+			}
+			throw new IOException(cause.getMessage(), cause);
+		}
+	}
+
+	private boolean isFresh(Path snapshot)
+	{
+		if (fetchPolicy != FetchPolicy.REVALIDATE || ttl.isZero() || !Files.exists(snapshot))
+		{
+			return false;
+		}
+		try
+		{
+			// The snapshot was last confirmed current when it was written or when a 304 touched its validators
+			Instant confirmed = Files.getLastModifiedTime(snapshot).toInstant();
+			Path validators = validatorsPath(snapshot);
+			if (Files.exists(validators))
+			{
+				Instant revalidated = Files.getLastModifiedTime(validators).toInstant();
+				confirmed = revalidated.isAfter(confirmed) ? revalidated : confirmed;
+			}
+			return confirmed.plus(ttl).isAfter(Instant.now());
+		} catch (IOException e)
+		{
+			return false;
+		}
+	}
+
+	private static Path validatorsPath(Path snapshot)
+	{
+		return Paths.get(snapshot.toString() + VALIDATORS_SUFFIX);
+	}
+
+	private static Properties loadValidators(Path snapshot)
+	{
+		Properties validators = new Properties();
+		Path path = validatorsPath(snapshot);
+		if (Files.exists(path))
+		{
+			try (InputStream input = Files.newInputStream(path))
+			{
+				validators.load(input);
+			} catch (IOException e)
+			{
+				LOGGER.warning("Could not read validators " + path + ": " + e.getMessage());
+			}
+		}
+		return validators;
+	}
+
+	private static void saveValidators(Path snapshot, HttpHeaders headers) throws IOException
+	{
+		Properties validators = new Properties();
+		headers.firstValue("ETag").ifPresent(value -> validators.setProperty("ETag", value));
+		headers.firstValue("Last-Modified").ifPresent(value -> validators.setProperty("Last-Modified", value));
+
+		Path path = validatorsPath(snapshot);
+		if (validators.isEmpty())
+		{
+			Files.deleteIfExists(path);
+			return;
+		}
+		try (OutputStream output = Files.newOutputStream(path))
+		{
+			validators.store(output, "HTTP validators for " + snapshot.getFileName());
+		}
+	}
+}
@@ -0,0 +1,352 @@
+package com.sergroup.ps.usa.unipec;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.logging.Logger;
+
+/**
+ * The CSS and JavaScript shared by the generated pages. By default they are
+ * written once per run into a fingerprinted bundle under assets/ that every
+ * page links to; the file names change whenever the content does, so the
+ * bundle can be cached forever. With output.assets.inline=true each page
+ * embeds its own copy instead, which keeps every page usable as a single file.
+ * The mode is read from the configuration the instance is created with, so
+ * each org of a batch run can choose its own.
+ */
+public class StaticAssets
+{
+	private static final Logger LOGGER = LoggingManager.getInstance().getLogger(StaticAssets.class);
+	private static final String ASSETS_DIRECTORY = "assets";
+	private static final String BUNDLE_PREFIX = "site.";
+
+	static final String TABLE_CSS = ""
+			+ "table { border-collapse: collapse; width: 100%; margin-top: 20px; }\n"
+			+ "th, td { border: 1px solid #ddd; padding: 8px; text-align: left; }\n"
+			+ "th { background-color: #f2f2f2; position: sticky; top: 0; }\n"
+			+ "tr:nth-child(even) { background-color: #f9f9f9; }\n"
+			+ "tr:hover { background-color: #f5f5f5; }\n"
+			+ ".null-value { color: #999; font-style: italic; }\n"
+			+ ".error-value { color: #ff4444; font-style: italic; }\n"
+			+ ".unknown-row { display: table-row; }\n"
+			+ ".controls { margin-bottom: 20px; }\n"
+			+ ".controls label { display: inline-flex; align-items: center; margin-right: 16px; }\n"
+			+ ".controls input[type='checkbox'] { margin-right: 8px; }\n"
+			+ ".controls select { margin-left: 8px; }\n"
+			+ ".row-count { color: #666; }\n"
+			+ ".viewport { height: 75vh; overflow: auto; border: 1px solid #ddd; }\n"
+			+ ".virtual-table { table-layout: fixed; margin-top: 0; }\n"
+			+ ".virtual-table th { cursor: pointer; user-select: none; }\n"
+			+ ".virtual-table td { white-space: nowrap; overflow: hidden; text-overflow: ellipsis; }\n"
+			+ ".virtual-table tr.spacer, .virtual-table tr.spacer:hover { background-color: transparent; }\n";
+
+	// The virtual table functions drive pages rendered by generateVirtualTable
+	static final String TABLE_JS = ""
+			+ "function toggleUnknownAttributes() {\n"
+			+ "    const show = document.getElementById('showUnknown').checked;\n"
+			+ "    const rows = document.getElementsByClassName('unknown-row');\n"
+			+ "    for (let row of rows) {\n"
+			+ "        row.style.display = show ? 'table-row' : 'none';\n"
+			+ "    }\n"
+			+ "}\n"
+			+ "const virtualTable = { rows: [], view: [], rowHeight: 0, sortColumn: -1, sortAscending: true };\n"
+			+ "function initVirtualTable() {\n"
+			+ "    virtualTable.rows = JSON.parse(document.getElementById('tableData').textContent);\n"
+			+ "    const types = [...new Set(virtualTable.rows.map(row => row[2]).filter(type => type !== null))].sort();\n"
+			+ "    const select = document.getElementById('filterType');\n"
+			+ "    for (const type of types) {\n"
+			+ "        select.add(new Option(type, type));\n"
+			+ "    }\n"
+			+ "    document.getElementById('viewport').addEventListener('scroll', renderVirtualRows);\n"
+			+ "    applyVirtualFilters();\n"
+			+ "}\n"
+			+ "function applyVirtualFilters() {\n"
+			+ "    const showUnknown = document.getElementById('showUnknown').checked;\n"
+			+ "    const type = document.getElementById('filterType').value;\n"
+			+ "    const mandatory = document.getElementById('filterMandatory').value;\n"
+			+ "    const readonly = document.getElementById('filterReadonly').value;\n"
+			+ "    virtualTable.view = virtualTable.rows.filter(row => (showUnknown || !row[9])\n"
+			+ "        && (type === '' || row[2] === type)\n"
+			+ "        && (mandatory === '' || String(row[7]) === mandatory)\n"
+			+ "        && (readonly === '' || String(row[8]) === readonly));\n"
+			+ "    if (virtualTable.sortColumn >= 0) {\n"
+			+ "        const column = virtualTable.sortColumn;\n"
+			+ "        const direction = virtualTable.sortAscending ? 1 : -1;\n"
+			+ "        virtualTable.view.sort((a, b) => direction * compareValues(a[column], b[column]));\n"
+			+ "    }\n"
+			+ "    document.getElementById('rowCount').textContent = virtualTable.view.length + ' of ' + virtualTable.rows.length + ' attributes';\n"
+			+ "    renderVirtualRows();\n"
+			+ "}\n"
+			+ "function sortVirtualTable(column) {\n"
+			+ "    virtualTable.sortAscending = virtualTable.sortColumn !== column || !virtualTable.sortAscending;\n"
+			+ "    virtualTable.sortColumn = column;\n"
+			+ "    applyVirtualFilters();\n"
+			+ "}\n"
+			+ "function compareValues(a, b) {\n"
+			+ "    if (a === b) {\n"
+			+ "        return 0;\n"
+			+ "    }\n"
+			+ "    if (a === null || b === null) {\n"
+			+ "        return a === null ? 1 : -1;\n"
+			+ "    }\n"
+			+ "    if (typeof a === 'number' && typeof b === 'number') {\n"
+			+ "        return a - b;\n"
+			+ "    }\n"
+			+ "    return String(a).localeCompare(String(b));\n"
+			+ "}\n"
+			+ "function renderVirtualRows() {\n"
+			+ "    const viewport = document.getElementById('viewport');\n"
+			+ "    const body = document.getElementById('virtualRows');\n"
+			+ "    const view = virtualTable.view;\n"
+			+ "    const rowHeight = virtualTable.rowHeight || 33;\n"
+			+ "    // Start on an even row so the striping does not flicker while scrolling\n"
+			+ "    let first = Math.max(0, Math.floor(viewport.scrollTop / rowHeight) - 10);\n"
+			+ "    first -= first % 2;\n"
+			+ "    const last = Math.min(view.length, Math.ceil((viewport.scrollTop + viewport.clientHeight) / rowHeight) + 10);\n"
+			+ "    const fragment = document.createDocumentFragment();\n"
+			+ "    fragment.appendChild(spacerRow(first * rowHeight));\n"
+			+ "    for (let i = first; i < last; i++) {\n"
+			+ "        fragment.appendChild(virtualRow(view[i]));\n"
+			+ "    }\n"
+			+ "    fragment.appendChild(spacerRow(Math.max(0, view.length - last) * rowHeight));\n"
+			+ "    body.replaceChildren(fragment);\n"
+			+ "    if (!virtualTable.rowHeight && last > first && body.children[1].offsetHeight > 0) {\n"
+			+ "        virtualTable.rowHeight = body.children[1].offsetHeight;\n"
+			+ "        renderVirtualRows();\n"
+			+ "    }\n"
+			+ "}\n"
+			+ "function spacerRow(height) {\n"
+			+ "    const row = document.createElement('tr');\n"
+			+ "    row.className = 'spacer';\n"
+			+ "    row.style.height = height + 'px';\n"
+			+ "    return row;\n"
+			+ "}\n"
+			+ "function virtualRow(row) {\n"
+			+ "    const tr = document.createElement('tr');\n"
+			+ "    const unknown = row[9];\n"
+			+ "    if (unknown) {\n"
+			+ "        tr.className = 'unknown-row';\n"
+			+ "    }\n"
+			+ "    for (let column = 0; column < 9; column++) {\n"
+			+ "        const cell = tr.insertCell();\n"
+			+ "        const value = row[column];\n"
+			+ "        if (unknown && column < 7) {\n"
+			+ "            cell.appendChild(valueSpan('error-value', column === 0 ? 'Unknown Attribute (' + value + ')' : 'N/A'));\n"
+			+ "        } else if (value === null) {\n"
+			+ "            cell.appendChild(valueSpan('null-value', 'null'));\n"
+			+ "        } else {\n"
+			+ "            cell.textContent = String(value);\n"
+			+ "            cell.title = cell.textContent;\n"
+			+ "        }\n"
+			+ "    }\n"
+			+ "    return tr;\n"
+			+ "}\n"
+			+ "function valueSpan(className, text) {\n"
+			+ "    const span = document.createElement('span');\n"
+			+ "    span.className = className;\n"
+			+ "    span.textContent = text;\n"
+			+ "    return span;\n"
+			+ "}\n";
+
+	// Scoped to the index page so the shared bundle does not restyle the table pages
+	static final String INDEX_CSS = ""
+			+ "body.index-page { font-family: Arial, sans-serif; margin: 0; padding: 20px; background-color: #f5f5f5; }\n"
+			+ ".index-page .container { max-width: 1200px; margin: 0 auto; background-color: white; padding: 20px; border-radius: 8px; box-shadow: 0 2px 4px rgba(0,0,0,0.1); }\n"
+			+ ".index-page h1 { color: #333; margin-bottom: 20px; }\n"
+			+ ".index-page #searchBox { width: 100%; padding: 12px; margin-bottom: 20px; border: 1px solid #ddd; border-radius: 4px; font-size: 16px; box-sizing: border-box; }\n"
+			+ ".index-page ul { list-style-type: none; padding: 0; }\n"
+			+ ".index-page li { margin: 8px 0; padding: 8px; border-radius: 4px; transition: background-color 0.2s; }\n"
+			+ ".index-page li:hover { background-color: #f0f0f0; }\n"
+			+ ".index-page a { text-decoration: none; color: #0066cc; display: inline-block; }\n"
+			+ ".index-page a:hover { color: #004499; }\n"
+			+ ".index-page .attribute-count { color: #666; margin-left: 10px; font-size: 0.9em; }\n"
+			+ ".index-page .no-attributes { color: #ff4444; }\n"
+			+ ".index-page .no-results { display: none; color: #666; font-style: italic; padding: 10px; }\n";
+
+	// Queries the prebuilt search index, loaded on first use; see SearchIndexBuilder
+	static final String INDEX_JS = ""
+			+ "let searchIndex = null;\n"
+			+ "let searchIndexRequested = false;\n"
+			+ "let searchTimer = null;\n"
+			+ "function loadSearchIndex() {\n"
+			+ "    if (searchIndexRequested) {\n"
+			+ "        return;\n"
+			+ "    }\n"
+			+ "    searchIndexRequested = true;\n"
+			+ "    const source = document.getElementById('searchBox').dataset.index;\n"
+			+ "    if (!source) {\n"
+			+ "        return;\n"
+			+ "    }\n"
+			+ "    const script = document.createElement('script');\n"
+			+ "    script.src = source;\n"
+			+ "    script.onload = function () {\n"
+			+ "        const raw = window.SEARCH_INDEX;\n"
+			+ "        searchIndex = { terms: raw.terms, postings: raw.postings.map(decodePostings) };\n"
+			+ "        searchDocuments();\n"
+			+ "    };\n"
+			+ "    document.head.appendChild(script);\n"
+			+ "}\n"
+			+ "function decodePostings(deltas) {\n"
+			+ "    let id = 0;\n"
+			+ "    return deltas.map(delta => id += delta);\n"
+			+ "}\n"
+			+ "function scheduleSearch() {\n"
+			+ "    loadSearchIndex();\n"
+			+ "    clearTimeout(searchTimer);\n"
+			+ "    searchTimer = setTimeout(searchDocuments, 150);\n"
+			+ "}\n"
+			+ "function tokenize(text) {\n"
+			+ "    return text.toLowerCase().split(/[^\\p{L}\\p{Nd}]+/u).filter(token => token.length > 0);\n"
+			+ "}\n"
+			+ "function lowerBound(terms, prefix) {\n"
+			+ "    let low = 0, high = terms.length;\n"
+			+ "    while (low < high) {\n"
+			+ "        const mid = (low + high) >>> 1;\n"
+			+ "        if (terms[mid] < prefix) { low = mid + 1; } else { high = mid; }\n"
+			+ "    }\n"
+			+ "    return low;\n"
+			+ "}\n"
+			+ "function matchingDocuments(query) {\n"
+			+ "    let result = null;\n"
+			+ "    for (const token of tokenize(query)) {\n"
+			+ "        const matches = new Set();\n"
+			+ "        for (let i = lowerBound(searchIndex.terms, token); i < searchIndex.terms.length && searchIndex.terms[i].startsWith(token); i++) {\n"
+			+ "            for (const id of searchIndex.postings[i]) { matches.add(id); }\n"
+			+ "        }\n"
+			+ "        result = result === null ? matches : new Set([...result].filter(id => matches.has(id)));\n"
+			+ "        if (result.size === 0) {\n"
+			+ "            break;\n"
+			+ "        }\n"
+			+ "    }\n"
+			+ "    return result;\n"
+			+ "}\n"
+			+ "function searchDocuments() {\n"
+			+ "    const input = document.getElementById('searchBox').value;\n"
+			+ "    const items = document.querySelectorAll('#documentList > li');\n"
+			+ "    const noResults = document.getElementById('noResults');\n"
+			+ "    let hasResults = false;\n"
+			+ "    if (searchIndex === null) {\n"
+			+ "        // Until the index has loaded, match the class names shown on the page\n"
+			+ "        const text = input.toLowerCase();\n"
+			+ "        for (let item of items) {\n"
+			+ "            const visible = item.textContent.toLowerCase().includes(text);\n"
+			+ "            item.style.display = visible ? '' : 'none';\n"
+			+ "            hasResults = hasResults || visible;\n"
+			+ "        }\n"
+			+ "    } else {\n"
+			+ "        const matches = matchingDocuments(input);\n"
+			+ "        items.forEach((item, id) => {\n"
+			+ "            const visible = matches === null || matches.has(id);\n"
+			+ "            item.style.display = visible ? '' : 'none';\n"
+			+ "            hasResults = hasResults || visible;\n"
+			+ "        });\n"
+			+ "    }\n"
+			+ "    noResults.style.display = hasResults ? 'none' : 'block';\n"
+			+ "}\n";
+
+	private static final String bundleCss = TABLE_CSS + INDEX_CSS;
+	private static final String bundleJs = TABLE_JS + INDEX_JS;
+	private static final String fingerprint = fingerprint(bundleCss + bundleJs);
+
+	private final boolean inline;
+
+	public StaticAssets(ConfigurationManager config)
+	{
+		inline = Boolean.parseBoolean(config.getProperty("output.assets.inline", "false"));
+	}
+
+	/**
+	 * Identifies the asset mode and content, so pages are re-rendered when either changes.
+	 */
+	public String signature()
+	{
+		return inline ? "inline:" + fingerprint : "linked:" + fingerprint;
+	}
+
+	/**
+	 * Writes the fingerprinted bundle unless it already exists, and removes
+	 * bundles left behind by earlier versions. Does nothing in inline mode.
+	 */
+	public void writeBundle(String outputDirectory) throws IOException
+	{
+		if (inline)
+		{
+			return;
+		}
+
+		Path assetsDirectory = Paths.get(outputDirectory, ASSETS_DIRECTORY);
+		Files.createDirectories(assetsDirectory);
+
+		String cssName = BUNDLE_PREFIX + fingerprint + ".css";
+		String jsName = BUNDLE_PREFIX + fingerprint + ".js";
+		try (DirectoryStream<Path> existing = Files.newDirectoryStream(assetsDirectory, BUNDLE_PREFIX + "*"))
+		{
+			for (Path path : existing)
+			{
+				String fileName = path.getFileName().toString();
+				if (!fileName.equals(cssName) && !fileName.equals(jsName))
+				{
+					Files.deleteIfExists(path);
+				}
+			}
+		}
+
+		writeIfMissing(assetsDirectory.resolve(cssName), bundleCss);
+		writeIfMissing(assetsDirectory.resolve(jsName), bundleJs);
+	}
+
+	private static void writeIfMissing(Path path, String content) throws IOException
+	{
+		if (!Files.exists(path))
+		{
+			Files.writeString(path, content);
+			LOGGER.info("Wrote static asset " + path);
+		}
+	}
+
+	/**
+	 * @param pathToRoot relative path from the page to the output directory, empty for pages at the root
+	 */
+	public String tableHead(String pathToRoot)
+	{
+		return inline ? inlineHead(TABLE_CSS, TABLE_JS) : linkedHead(pathToRoot);
+	}
+
+	public String indexHead(String pathToRoot)
+	{
+		return inline ? inlineHead(INDEX_CSS, INDEX_JS) : linkedHead(pathToRoot);
+	}
+
+	private static String inlineHead(String css, String js)
+	{
+		return "<style>\n" + css + "</style>\n<script>\n" + js + "</script>\n";
+	}
+
+	private static String linkedHead(String pathToRoot)
+	{
+		String prefix = pathToRoot + ASSETS_DIRECTORY + "/" + BUNDLE_PREFIX + fingerprint;
+		return "<link rel='stylesheet' href='" + prefix + ".css'>\n<script src='" + prefix + ".js'></script>\n";
+	}
+
+	private static String fingerprint(String content)
+	{
+		try
+		{
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder();
+			for (int i = 0; i < 5; i++)
+			{
+				hex.append(Character.forDigit((digest[i] >> 4) & 0xF, 16)).append(Character.forDigit(digest[i] & 0xF, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+}
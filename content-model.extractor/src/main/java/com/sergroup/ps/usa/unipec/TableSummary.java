@@ -0,0 +1,42 @@
+package com.sergroup.ps.usa.unipec;
+
+/**
+ * The facts about a rendered table that the index page needs, kept after the
+ * table itself has been written to disk.
+ */
+public class TableSummary
+{
+	private final String documentName;
+	private final String fileName;
+	private final int attributeCount;
+	private final String contentHash;
+
+	public TableSummary(String documentName, String fileName, int attributeCount, String contentHash)
+	{
+		this.documentName = documentName;
+		this.fileName = fileName;
+		this.attributeCount = attributeCount;
+		this.contentHash = contentHash;
+	}
+
+	public String getDocumentName()
+	{
+		return documentName;
+	}
+
+	public String getFileName()
+	{
+		return fileName;
+	}
+
+	public int getAttributeCount()
+	{
+		return attributeCount;
+	}
+
+	public String getContentHash()
+	{
+		return contentHash;
+	}
+
+}
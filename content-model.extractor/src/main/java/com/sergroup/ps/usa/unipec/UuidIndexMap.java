@@ -0,0 +1,232 @@
+package com.sergroup.ps.usa.unipec;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Open-addressing map keyed by UUID strings. Canonical UUIDs are parsed into
+ * two longs and stored in parallel primitive arrays, so lookups do not
+ * allocate and entries carry no per-key objects. Values are kept in insertion
+ * order and can also be addressed by their index.
+ *
+ * Keys that are not canonical UUIDs are kept in a small fallback map.
+ *
+ * Not thread-safe for writes; concurrent reads after loading are safe.
+ */
+public final class UuidIndexMap<V>
+{
+	private static final int MIN_CAPACITY = 16;
+	// Returned by the parsers for malformed input. A UUID half that happens to
+	// equal it is parsed the same way every time and simply uses the fallback map.
+	static final long INVALID = 0x8000000000000000L;
+
+	private long[] mostSignificantBits;
+	private long[] leastSignificantBits;
+	// Slot holds value index + 1, 0 marks an empty slot
+	private int[] slots;
+	private Object[] values;
+	private int size;
+	private final Map<String, Integer> nonCanonicalKeys = new HashMap<>();
+
+	public UuidIndexMap()
+	{
+		this(MIN_CAPACITY);
+	}
+
+	public UuidIndexMap(int expectedSize)
+	{
+		allocate(tableSizeFor(expectedSize));
+		values = new Object[Math.max(MIN_CAPACITY, expectedSize)];
+	}
+
+	public void put(String uuid, V value)
+	{
+		int index = indexOf(uuid);
+		if (index >= 0)
+		{
+			values[index] = value;
+			return;
+		}
+
+		if (size == values.length)
+		{
+			values = Arrays.copyOf(values, size * 2);
+		}
+		index = size++;
+		values[index] = value;
+
+		long msb = parseMostSignificantBits(uuid);
+		long lsb = msb == INVALID ? 0 : parseLeastSignificantBits(uuid);
+		if (msb == INVALID || lsb == INVALID)
+		{
+			nonCanonicalKeys.put(uuid, index);
+			return;
+		}
+
+		if ((size - nonCanonicalKeys.size()) * 2 > slots.length)
+		{
+			rehash(slots.length * 2);
+		}
+		insert(msb, lsb, index);
+	}
+
+	public V get(String uuid)
+	{
+		int index = indexOf(uuid);
+		return index >= 0 ? valueAt(index) : null;
+	}
+
+	public boolean containsKey(String uuid)
+	{
+		return indexOf(uuid) >= 0;
+	}
+
+	/**
+	 * @return the insertion index of the value stored for the UUID, or -1
+	 */
+	public int indexOf(String uuid)
+	{
+		if (uuid == null)
+		{
+			return -1;
+		}
+
+		long msb = parseMostSignificantBits(uuid);
+		long lsb = msb == INVALID ? 0 : parseLeastSignificantBits(uuid);
+		if (msb == INVALID || lsb == INVALID)
+		{
+			Integer index = nonCanonicalKeys.get(uuid);
+			return index != null ? index : -1;
+		}
+
+		int mask = slots.length - 1;
+		for (int slot = hash(msb, lsb) & mask;; slot = (slot + 1) & mask)
+		{
+			int entry = slots[slot];
+			if (entry == 0)
+			{
+				return -1;
+			}
+			if (mostSignificantBits[slot] == msb && leastSignificantBits[slot] == lsb)
+			{
+				return entry - 1;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public V valueAt(int index)
+	{
+		return (V) values[index];
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public void clear()
+	{
+		allocate(MIN_CAPACITY);
+		values = new Object[MIN_CAPACITY];
+		size = 0;
+		nonCanonicalKeys.clear();
+	}
+
+	private void allocate(int capacity)
+	{
+		mostSignificantBits = new long[capacity];
+		leastSignificantBits = new long[capacity];
+		slots = new int[capacity];
+	}
+
+	private void insert(long msb, long lsb, int index)
+	{
+		int mask = slots.length - 1;
+		int slot = hash(msb, lsb) & mask;
+		while (slots[slot] != 0)
+		{
+			slot = (slot + 1) & mask;
+		}
+		mostSignificantBits[slot] = msb;
+		leastSignificantBits[slot] = lsb;
+		slots[slot] = index + 1;
+	}
+
+	private void rehash(int capacity)
+	{
+		long[] oldMsb = mostSignificantBits;
+		long[] oldLsb = leastSignificantBits;
+		int[] oldSlots = slots;
+		allocate(capacity);
+		for (int i = 0; i < oldSlots.length; i++)
+		{
+			if (oldSlots[i] != 0)
+			{
+				insert(oldMsb[i], oldLsb[i], oldSlots[i] - 1);
+			}
+		}
+	}
+
+	private static int tableSizeFor(int expectedSize)
+	{
+		int capacity = MIN_CAPACITY;
+		while (capacity < expectedSize * 2)
+		{
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	private static int hash(long msb, long lsb)
+	{
+		long h = msb * 0x9E3779B97F4A7C15L ^ lsb;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+
+	// Canonical form: xxxxxxxx-xxxx-xxxx-xxxx-xxxxxxxxxxxx with lower case hex digits
+	static long parseMostSignificantBits(String uuid)
+	{
+		if (uuid.length() != 36 || uuid.charAt(8) != '-' || uuid.charAt(13) != '-' || uuid.charAt(18) != '-' || uuid.charAt(23) != '-')
+		{
+			return INVALID;
+		}
+		return parseHex(uuid, 0, 8, parseHex(uuid, 9, 13, parseHex(uuid, 14, 18, 0, 0), 16), 32);
+	}
+
+	static long parseLeastSignificantBits(String uuid)
+	{
+		return parseHex(uuid, 19, 23, parseHex(uuid, 24, 36, 0, 0), 48);
+	}
+
+	private static long parseHex(String value, int start, int end, long low, int shift)
+	{
+		if (low == INVALID)
+		{
+			return INVALID;
+		}
+		long result = 0;
+		for (int i = start; i < end; i++)
+		{
+			// Lower case ASCII only: any other spelling of a UUID is a different key, as in a HashMap
+			char c = value.charAt(i);
+			int digit;
+			if (c >= '0' && c <= '9')
+			{
+				digit = c - '0';
+			} else if (c >= 'a' && c <= 'f')
+			{
+				digit = c - 'a' + 10;
+			} else
+			{
+				return INVALID;
+			}
+			result = (result << 4) | digit;
+		}
+		return (result << shift) | low;
+	}
+}
@@ -0,0 +1,271 @@
+package com.sergroup.ps.usa.unipec;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Reverse index from attribute definitions to the document classes that use
+ * them, written as one page per used attribute under attributes/ plus a usage
+ * summary at attributes/index.html that also lists unused definitions.
+ *
+ * Classes are added in index page order while the tables are collected. Each
+ * usage is an int packing the attribute index from AttributeDefinitionsCache
+ * with the mandatory and readonly flags, so the whole adjacency lives in a few
+ * primitive arrays. Building the per-attribute lists is a counting sort over
+ * the usages, so the cost is linear in classes + attributes + usages.
+ */
+public class WhereUsedIndex
+{
+	private static final Logger LOGGER = LoggingManager.getInstance().getLogger(WhereUsedIndex.class);
+	public static final String DIRECTORY = "attributes";
+	private static final int MANDATORY = 2;
+	private static final int READONLY = 1;
+
+	private final AttributeDefinitionsCache attributeDefinitions;
+	private final StaticAssets assets;
+	private final int attributeCount;
+	// Usages of class c are usages[classStart[c]] to usages[classStart[c + 1] - 1]
+	private int[] usages = new int[1024];
+	private int usageCount;
+	private int[] classStart = new int[64];
+	private int classCount;
+	// Last class that used each attribute, to drop repeated attributes within a class
+	private final int[] lastClass;
+
+	public WhereUsedIndex(AttributeDefinitionsCache attributeDefinitions, StaticAssets assets)
+	{
+		this.attributeDefinitions = attributeDefinitions;
+		this.assets = assets;
+		this.attributeCount = attributeDefinitions.getCacheSize();
+		this.lastClass = new int[attributeCount];
+		Arrays.fill(lastClass, -1);
+	}
+
+	public static int usage(int attributeIndex, boolean mandatory, boolean readonly)
+	{
+		return attributeIndex << 2 | (mandatory ? MANDATORY : 0) | (readonly ? READONLY : 0);
+	}
+
+	/**
+	 * Adds the next document class. Must be called in index page order.
+	 */
+	public void addClass(int[] classUsages)
+	{
+		int classId = classCount++;
+		if (classCount + 1 > classStart.length)
+		{
+			classStart = Arrays.copyOf(classStart, classStart.length * 2);
+		}
+		for (int usage : classUsages)
+		{
+			int attributeIndex = usage >>> 2;
+			if (lastClass[attributeIndex] == classId)
+			{
+				continue;
+			}
+			lastClass[attributeIndex] = classId;
+			if (usageCount == usages.length)
+			{
+				usages = Arrays.copyOf(usages, usages.length * 2);
+			}
+			usages[usageCount++] = usage;
+		}
+		classStart[classCount] = usageCount;
+	}
+
+	/**
+	 * Writes the attribute pages and the usage summary, and removes pages of
+	 * attributes that are no longer used.
+	 *
+	 * @param tables the document classes in the order they were added
+	 * @return the number of bytes written
+	 */
+	public long write(String outputDirectory, List<TableSummary> tables) throws IOException
+	{
+		// Counting sort of the usages by attribute; classes stay ascending within each attribute
+		int[] attributeStart = new int[attributeCount + 1];
+		for (int i = 0; i < usageCount; i++)
+		{
+			attributeStart[(usages[i] >>> 2) + 1]++;
+		}
+		for (int i = 0; i < attributeCount; i++)
+		{
+			attributeStart[i + 1] += attributeStart[i];
+		}
+		int[] next = Arrays.copyOf(attributeStart, attributeCount);
+		// Class id in the upper bits, flags in the lower two, as in the usages
+		int[] users = new int[usageCount];
+		for (int classId = 0; classId < classCount; classId++)
+		{
+			for (int i = classStart[classId]; i < classStart[classId + 1]; i++)
+			{
+				users[next[usages[i] >>> 2]++] = classId << 2 | (usages[i] & (MANDATORY | READONLY));
+			}
+		}
+
+		Path directory = Paths.get(outputDirectory, DIRECTORY);
+		Files.createDirectories(directory);
+		Set<String> written = new HashSet<>();
+		written.add("index.html");
+		int unused = 0;
+		long bytesWritten = 0;
+		for (int attribute = 0; attribute < attributeCount; attribute++)
+		{
+			if (attributeStart[attribute] == attributeStart[attribute + 1])
+			{
+				unused++;
+				continue;
+			}
+			AttributeDefinition definition = attributeDefinitions.getAttributeDefinition(attribute);
+			String fileName = pageName(definition.uuid());
+			writeAttributePage(directory.resolve(fileName), definition, users, attributeStart[attribute], attributeStart[attribute + 1], tables);
+			bytesWritten += Files.size(directory.resolve(fileName));
+			written.add(fileName);
+		}
+
+		writeSummary(directory.resolve("index.html"), attributeStart, unused);
+		bytesWritten += Files.size(directory.resolve("index.html"));
+		deleteStalePages(directory, written);
+		LOGGER.info("Wrote where-used pages for " + (attributeCount - unused) + " attributes, " + unused + " attribute definitions are unused");
+		return bytesWritten;
+	}
+
+	/**
+	 * Canonical UUIDs are used as they are. Any other character, including
+	 * upper case letters for case-insensitive file systems, is written as _
+	 * and four hex digits, so different UUIDs never share a page.
+	 */
+	static String pageName(String uuid)
+	{
+		StringBuilder name = new StringBuilder(uuid.length() + 5);
+		for (int i = 0; i < uuid.length(); i++)
+		{
+			char c = uuid.charAt(i);
+			if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-')
+			{
+				name.append(c);
+			} else
+			{
+				name.append('_');
+				for (int shift = 12; shift >= 0; shift -= 4)
+				{
+					name.append(Character.forDigit((c >> shift) & 0xF, 16));
+				}
+			}
+		}
+		return name.append(".html").toString();
+	}
+
+	private void writeAttributePage(Path path, AttributeDefinition definition, int[] users, int from, int to, List<TableSummary> tables) throws IOException
+	{
+		try (Writer page = HtmlWriter.open(path))
+		{
+			page.append("<!DOCTYPE html>\n<html>\n<head>\n")
+					.append("<title>").append(HtmlWriter.escape(definition.name())).append("</title>\n")
+					.append(assets.tableHead("../"))
+					.append("</head>\n<body>\n")
+					.append("<p><a href='index.html'>Attribute usage</a> | <a href='../index.html'>Document classes</a></p>\n")
+					.append("<h2>").append(HtmlWriter.escape(definition.name())).append("</h2>\n")
+					.append("<table>\n")
+					.append("<tr><th>UUID</th><td>").append(HtmlWriter.escape(definition.uuid())).append("</td></tr>\n")
+					.append("<tr><th>Short Name</th><td>").append(JsonToHtmlTableConverter.formatValue(definition.shortName())).append("</td></tr>\n")
+					.append("<tr><th>Data Type</th><td>").append(JsonToHtmlTableConverter.formatValue(definition.attributeDataType())).append("</td></tr>\n")
+					.append("<tr><th>Default Value</th><td>").append(JsonToHtmlTableConverter.formatValue(definition.defaultValue())).append("</td></tr>\n")
+					.append("<tr><th>Length</th><td>").append(String.valueOf(definition.length())).append("</td></tr>\n")
+					.append("<tr><th>Multivalue Type</th><td>").append(JsonToHtmlTableConverter.formatValue(definition.multivalueType())).append("</td></tr>\n")
+					.append("<tr><th>Fulltext Usage</th><td>").append(JsonToHtmlTableConverter.formatValue(definition.fulltextUsage())).append("</td></tr>\n")
+					.append("</table>\n")
+					.append("<h3>Used by ").append(String.valueOf(to - from)).append(to - from == 1 ? " document class" : " document classes").append("</h3>\n")
+					.append("<table>\n")
+					.append("<tr><th>Document Class</th><th>Mandatory</th><th>Readonly</th></tr>\n");
+			for (int i = from; i < to; i++)
+			{
+				TableSummary table = tables.get(users[i] >>> 2);
+				page.append("<tr><td><a href='../").append(table.getFileName()).append("'>").append(HtmlWriter.escape(table.getDocumentName())).append("</a></td>")
+						.append("<td>").append(String.valueOf((users[i] & MANDATORY) != 0)).append("</td>")
+						.append("<td>").append(String.valueOf((users[i] & READONLY) != 0)).append("</td></tr>\n");
+			}
+			page.append("</table>\n</body>\n</html>");
+		}
+	}
+
+	// Most used attributes first; a counting sort on the usage count keeps this linear as well
+	private void writeSummary(Path path, int[] attributeStart, int unused) throws IOException
+	{
+		int[] countStart = new int[classCount + 2];
+		for (int attribute = 0; attribute < attributeCount; attribute++)
+		{
+			countStart[classCount - usageCountOf(attributeStart, attribute) + 1]++;
+		}
+		for (int i = 0; i <= classCount; i++)
+		{
+			countStart[i + 1] += countStart[i];
+		}
+		int[] order = new int[attributeCount];
+		for (int attribute = 0; attribute < attributeCount; attribute++)
+		{
+			order[countStart[classCount - usageCountOf(attributeStart, attribute)]++] = attribute;
+		}
+
+		try (Writer page = HtmlWriter.open(path))
+		{
+			page.append("<!DOCTYPE html>\n<html>\n<head>\n")
+					.append("<title>Attribute Usage</title>\n")
+					.append(assets.tableHead("../"))
+					.append("</head>\n<body>\n")
+					.append("<p><a href='../index.html'>Document classes</a></p>\n")
+					.append("<h2>Attribute Usage</h2>\n")
+					.append("<p>").append(String.valueOf(attributeCount)).append(" attribute definitions, ")
+					.append(String.valueOf(unused)).append(" not used by any document class</p>\n")
+					.append("<table>\n")
+					.append("<tr><th>Attribute Name</th><th>Short Name</th><th>Data Type</th><th>UUID</th><th>Used By</th></tr>\n");
+			for (int attribute : order)
+			{
+				AttributeDefinition definition = attributeDefinitions.getAttributeDefinition(attribute);
+				int count = usageCountOf(attributeStart, attribute);
+				page.append("<tr><td>");
+				if (count > 0)
+				{
+					page.append("<a href='").append(pageName(definition.uuid())).append("'>").append(HtmlWriter.escape(definition.name())).append("</a>");
+				} else
+				{
+					page.append(HtmlWriter.escape(definition.name()));
+				}
+				page.append("</td>")
+						.append("<td>").append(JsonToHtmlTableConverter.formatValue(definition.shortName())).append("</td>")
+						.append("<td>").append(JsonToHtmlTableConverter.formatValue(definition.attributeDataType())).append("</td>")
+						.append("<td>").append(HtmlWriter.escape(definition.uuid())).append("</td>")
+						.append("<td>").append(String.valueOf(count)).append("</td></tr>\n");
+			}
+			page.append("</table>\n</body>\n</html>");
+		}
+	}
+
+	private static int usageCountOf(int[] attributeStart, int attribute)
+	{
+		return attributeStart[attribute + 1] - attributeStart[attribute];
+	}
+
+	private static void deleteStalePages(Path directory, Set<String> written) throws IOException
+	{
+		try (DirectoryStream<Path> pages = Files.newDirectoryStream(directory, "*.html"))
+		{
+			for (Path page : pages)
+			{
+				if (!written.contains(page.getFileName().toString()))
+				{
+					Files.deleteIfExists(page);
+				}
+			}
+		}
+	}
+}
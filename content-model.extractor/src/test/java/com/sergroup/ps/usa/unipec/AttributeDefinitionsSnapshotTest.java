@@ -0,0 +1,191 @@
+package com.sergroup.ps.usa.unipec;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AttributeDefinitionsSnapshotTest
+{
+	private static final String FIRST = "cd613e30-d8f1-6adf-91b7-584a2265b1f5";
+	private static final String SECOND = "0c2ce6f4-7ed4-d57b-1e2f-eb89414c343c";
+	// Negative most significant bits, to check the sort order of the index
+	private static final String THIRD = "f9e9c616-612e-7696-a6ce-cc1b78e51061";
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void writesMapsAndDecodesAllDefinitions() throws IOException
+	{
+		Path json = writeJson(definition(FIRST, "Gr\u00f6\u00dfe <1> & co", null, "x") + "," + definition(SECOND, "Second", "S2", null) + ","
+				+ definition(THIRD, "Third", "S3", "{\"a\":1}"));
+
+		AttributeDefinitionsSnapshot snapshot = AttributeDefinitionsSnapshot.openOrBuild(json);
+
+		assertNotNull(snapshot);
+		assertTrue(Files.exists(AttributeDefinitionsSnapshot.snapshotPathFor(json)));
+		assertEquals(3, snapshot.size());
+		assertEquals(new AttributeDefinition(FIRST, "Gr\u00f6\u00dfe <1> & co", null, "STRING", "x", 7, "SINGLE_VALUE", "NONE"), snapshot.get(FIRST));
+		assertEquals(new AttributeDefinition(SECOND, "Second", "S2", "STRING", null, 7, "SINGLE_VALUE", "NONE"), snapshot.get(SECOND));
+		assertEquals("Third", snapshot.get(THIRD).name());
+		for (String uuid : new String[] { FIRST, SECOND, THIRD })
+		{
+			assertEquals(uuid, snapshot.valueAt(snapshot.indexOf(uuid)).uuid());
+		}
+	}
+
+	@Test
+	void missesUnknownAndNonCanonicalKeys() throws IOException
+	{
+		AttributeDefinitionsSnapshot snapshot = AttributeDefinitionsSnapshot.openOrBuild(writeJson(definition(FIRST, "First", null, null)));
+
+		assertNull(snapshot.get("00000000-0000-0000-0000-000000000000"));
+		assertNull(snapshot.get(FIRST.toUpperCase()));
+		assertNull(snapshot.get("not a uuid"));
+		assertEquals(-1, snapshot.indexOf(null));
+	}
+
+	@Test
+	void reopensCurrentSnapshotWithoutRebuilding() throws IOException
+	{
+		Path json = writeJson(definition(FIRST, "First", null, null));
+		AttributeDefinitionsSnapshot.openOrBuild(json);
+		Path binary = AttributeDefinitionsSnapshot.snapshotPathFor(json);
+		FileTime built = FileTime.from(Instant.parse("2020-01-01T00:00:00Z"));
+		Files.setLastModifiedTime(binary, built);
+
+		AttributeDefinitionsSnapshot snapshot = AttributeDefinitionsSnapshot.openOrBuild(json);
+
+		assertEquals("First", snapshot.get(FIRST).name());
+		assertEquals(built, Files.getLastModifiedTime(binary));
+	}
+
+	@Test
+	void buildsNewFileWhenJsonChanged() throws IOException
+	{
+		Path json = writeJson(definition(FIRST, "First", null, null));
+		AttributeDefinitionsSnapshot previous = AttributeDefinitionsSnapshot.openOrBuild(json);
+		Path previousBinary = AttributeDefinitionsSnapshot.snapshotPathFor(json);
+
+		writeJson(definition(FIRST, "Renamed", null, null) + "," + definition(SECOND, "Second", null, null));
+		Files.setLastModifiedTime(json, FileTime.from(Files.getLastModifiedTime(json).toInstant().plusSeconds(60)));
+		AttributeDefinitionsSnapshot snapshot = AttributeDefinitionsSnapshot.openOrBuild(json);
+
+		assertEquals(2, snapshot.size());
+		assertEquals("Renamed", snapshot.get(FIRST).name());
+		assertNotEquals(previousBinary, AttributeDefinitionsSnapshot.snapshotPathFor(json));
+		assertTrue(Files.notExists(previousBinary));
+		// The mapping of the earlier snapshot outlives its file
+		assertEquals("First", previous.get(FIRST).name());
+	}
+
+	@Test
+	void deletesSnapshotOfOlderNamingScheme() throws IOException
+	{
+		Path json = writeJson(definition(FIRST, "First", null, null));
+		Path legacy = Files.write(directory.resolve("attribute_definitions.bin"), new byte[] { 1 });
+
+		AttributeDefinitionsSnapshot.openOrBuild(json);
+
+		assertTrue(Files.notExists(legacy));
+		assertTrue(Files.exists(json));
+	}
+
+	@Test
+	void rebuildsWhenHeaderIsCorrupt() throws IOException
+	{
+		Path json = writeJson(definition(FIRST, "First", null, null));
+		AttributeDefinitionsSnapshot.openOrBuild(json);
+		Path binary = AttributeDefinitionsSnapshot.snapshotPathFor(json);
+		byte[] bytes = Files.readAllBytes(binary);
+		bytes[0] = 0;
+		bytes[7] = 99;
+		Files.write(binary, bytes);
+
+		AttributeDefinitionsSnapshot snapshot = AttributeDefinitionsSnapshot.openOrBuild(json);
+
+		assertEquals("First", snapshot.get(FIRST).name());
+	}
+
+	@Test
+	void rebuildsWhenFileIsTruncated() throws IOException
+	{
+		Path json = writeJson(definition(FIRST, "First", null, null));
+		Files.write(AttributeDefinitionsSnapshot.snapshotPathFor(json), new byte[] { 0x41, 0x44 });
+
+		AttributeDefinitionsSnapshot snapshot = AttributeDefinitionsSnapshot.openOrBuild(json);
+
+		assertEquals(1, snapshot.size());
+		assertEquals("First", snapshot.get(FIRST).name());
+	}
+
+	@Test
+	void rebuildsWhenCountExceedsFile() throws IOException
+	{
+		Path json = writeJson(definition(FIRST, "First", null, null));
+		Path binary = buildAndCorrupt(json, 8, 1_000_000);
+
+		AttributeDefinitionsSnapshot snapshot = AttributeDefinitionsSnapshot.openOrBuild(json);
+
+		assertEquals(1, snapshot.size());
+		assertEquals("First", snapshot.get(FIRST).name());
+		assertEquals(1, ByteBuffer.wrap(Files.readAllBytes(binary)).getInt(8));
+	}
+
+	@Test
+	void rebuildsWhenRecordOffsetIsOutsideFile() throws IOException
+	{
+		Path json = writeJson(definition(FIRST, "First", null, null));
+		// Record offset of the first index entry
+		buildAndCorrupt(json, 32 + 16, Integer.MAX_VALUE);
+
+		AttributeDefinitionsSnapshot snapshot = AttributeDefinitionsSnapshot.openOrBuild(json);
+
+		assertEquals("First", snapshot.get(FIRST).name());
+	}
+
+	@Test
+	void refusesNonCanonicalUuids() throws IOException
+	{
+		Path json = writeJson(definition(FIRST, "First", null, null) + "," + definition(SECOND.toUpperCase(), "Upper", null, null));
+
+		assertNull(AttributeDefinitionsSnapshot.openOrBuild(json));
+		assertTrue(Files.notExists(AttributeDefinitionsSnapshot.snapshotPathFor(json)));
+	}
+
+	private static Path buildAndCorrupt(Path json, int position, int value) throws IOException
+	{
+		AttributeDefinitionsSnapshot.openOrBuild(json);
+		Path binary = AttributeDefinitionsSnapshot.snapshotPathFor(json);
+		byte[] bytes = Files.readAllBytes(binary);
+		ByteBuffer.wrap(bytes).putInt(position, value);
+		Files.write(binary, bytes);
+		return binary;
+	}
+
+	private Path writeJson(String definitions) throws IOException
+	{
+		return Files.writeString(directory.resolve("attribute_definitions.json"), "[" + definitions + "]", StandardCharsets.UTF_8);
+	}
+
+	private static String definition(String uuid, String name, String shortName, String defaultValue)
+	{
+		String defaultJson = defaultValue == null ? "null" : defaultValue.startsWith("{") ? defaultValue : "\"" + defaultValue + "\"";
+		return "{\"uuid\":\"" + uuid + "\",\"name\":\"" + name + "\",\"shortName\":" + (shortName == null ? "null" : "\"" + shortName + "\"")
+				+ ",\"attributeDataType\":\"STRING\",\"defaultValue\":" + defaultJson
+				+ ",\"length\":7,\"multivalueType\":\"SINGLE_VALUE\",\"fulltextUsage\":\"NONE\",\"extra\":{\"a\":[1,2]}}";
+	}
+}
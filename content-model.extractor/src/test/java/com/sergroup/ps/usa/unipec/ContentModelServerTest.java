@@ -0,0 +1,132 @@
+package com.sergroup.ps.usa.unipec;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpServer;
+
+class ContentModelServerTest
+{
+	private static final String PAGE = "<html>" + "<tr><td>Invoice</td></tr>".repeat(200) + "</html>";
+
+	@TempDir
+	Path directory;
+
+	private HttpServer server;
+	private final HttpClient client = HttpClient.newHttpClient();
+
+	@BeforeEach
+	void startServer() throws IOException
+	{
+		Files.writeString(directory.resolve("index.html"), PAGE, StandardCharsets.UTF_8);
+		ContentModelServer.serve(SiteCache.load(directory.toString(), SiteCache.empty()));
+		server = ContentModelServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2);
+	}
+
+	@AfterEach
+	void stopServer()
+	{
+		server.stop(0);
+		ContentModelServer.serve(SiteCache.empty());
+	}
+
+	@Test
+	void parsesAcceptEncodingQualities()
+	{
+		assertTrue(ContentModelServer.acceptsGzip(List.of("gzip")));
+		assertTrue(ContentModelServer.acceptsGzip(List.of("deflate, GZIP;q=0.5")));
+		assertTrue(ContentModelServer.acceptsGzip(List.of("br", "gzip ; q=1.0")));
+		assertTrue(ContentModelServer.acceptsGzip(List.of("*")));
+		assertFalse(ContentModelServer.acceptsGzip(null));
+		assertFalse(ContentModelServer.acceptsGzip(List.of("")));
+		assertFalse(ContentModelServer.acceptsGzip(List.of("gzip;q=0")));
+		assertFalse(ContentModelServer.acceptsGzip(List.of("gzip;q=0.000")));
+		assertFalse(ContentModelServer.acceptsGzip(List.of("x-gzip")));
+		assertFalse(ContentModelServer.acceptsGzip(List.of("identity, deflate")));
+		assertFalse(ContentModelServer.acceptsGzip(List.of("*;q=0")));
+		assertFalse(ContentModelServer.acceptsGzip(List.of("gzip;q=abc")));
+		// The quality of gzip itself takes precedence over the one of *
+		assertFalse(ContentModelServer.acceptsGzip(List.of("*, gzip;q=0")));
+		assertTrue(ContentModelServer.acceptsGzip(List.of("*;q=0, gzip")));
+	}
+
+	@Test
+	void matchesIfNoneMatchWeaklyAgainstEveryListedTag()
+	{
+		assertTrue(ContentModelServer.matchesIfNoneMatch(List.of("\"abc\""), "\"abc\""));
+		assertTrue(ContentModelServer.matchesIfNoneMatch(List.of("\"x\", W/\"abc\""), "\"abc\""));
+		assertTrue(ContentModelServer.matchesIfNoneMatch(List.of("\"x\"", "\"abc\""), "\"abc\""));
+		assertTrue(ContentModelServer.matchesIfNoneMatch(List.of("*"), "\"abc\""));
+		assertFalse(ContentModelServer.matchesIfNoneMatch(List.of("\"abc-gz\""), "\"abc\""));
+		assertFalse(ContentModelServer.matchesIfNoneMatch(null, "\"abc\""));
+	}
+
+	@Test
+	void servesGzipOnlyWhenAccepted() throws IOException, InterruptedException
+	{
+		HttpResponse<byte[]> gzip = get("Accept-Encoding", "deflate, gzip");
+		HttpResponse<byte[]> identity = get("Accept-Encoding", "gzip;q=0, x-gzip");
+
+		assertEquals(200, gzip.statusCode());
+		assertEquals("gzip", gzip.headers().firstValue("Content-Encoding").orElse(null));
+		assertEquals("Accept-Encoding", gzip.headers().firstValue("Vary").orElse(null));
+		try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(gzip.body())))
+		{
+			assertArrayEquals(PAGE.getBytes(StandardCharsets.UTF_8), input.readAllBytes());
+		}
+
+		assertEquals(200, identity.statusCode());
+		assertFalse(identity.headers().firstValue("Content-Encoding").isPresent());
+		assertEquals("Accept-Encoding", identity.headers().firstValue("Vary").orElse(null));
+		assertArrayEquals(PAGE.getBytes(StandardCharsets.UTF_8), identity.body());
+		assertNotEquals(gzip.headers().firstValue("ETag").orElseThrow(), identity.headers().firstValue("ETag").orElseThrow());
+	}
+
+	@Test
+	void answersIfNoneMatchPerRepresentation() throws IOException, InterruptedException
+	{
+		String gzipEtag = get("Accept-Encoding", "gzip").headers().firstValue("ETag").orElseThrow();
+		String identityEtag = get("Accept-Encoding", "identity").headers().firstValue("ETag").orElseThrow();
+
+		HttpResponse<byte[]> notModified = get("Accept-Encoding", "gzip", "If-None-Match", gzipEtag);
+		assertEquals(304, notModified.statusCode());
+		assertEquals(gzipEtag, notModified.headers().firstValue("ETag").orElse(null));
+		assertEquals("Accept-Encoding", notModified.headers().firstValue("Vary").orElse(null));
+		assertEquals(0, notModified.body().length);
+
+		assertEquals(304, get("If-None-Match", "\"other\", W/" + identityEtag).statusCode());
+		// The validator of one representation does not validate the other
+		HttpResponse<byte[]> changed = get("If-None-Match", gzipEtag);
+		assertEquals(200, changed.statusCode());
+		assertEquals(identityEtag, changed.headers().firstValue("ETag").orElse(null));
+	}
+
+	private HttpResponse<byte[]> get(String... headers) throws IOException, InterruptedException
+	{
+		URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+		HttpRequest request = HttpRequest.newBuilder(uri).headers(headers).GET().build();
+		return client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+	}
+}
@@ -0,0 +1,130 @@
+package com.sergroup.ps.usa.unipec;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HtmlWriterTest
+{
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void escapesHtmlSpecialCharacters() throws IOException
+	{
+		Path page = directory.resolve("page.html");
+		try (HtmlWriter writer = HtmlWriter.open(page))
+		{
+			writer.append("<td>").appendEscaped("<a href=\"x\">Tom & Jerry's</a> é€😀").appendEscaped(null).append("</td>");
+		}
+
+		assertEquals("<td>&lt;a href=&quot;x&quot;&gt;Tom &amp; Jerry&#39;s&lt;/a&gt; é€😀null</td>", Files.readString(page, StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void escapeReturnsSameInstanceWithoutSpecialCharacters()
+	{
+		String text = "Invoice é";
+
+		assertSame(text, HtmlWriter.escape(text));
+		assertEquals("a &lt; b &amp;&amp; c", HtmlWriter.escape("a < b && c"));
+		assertNull(HtmlWriter.escape(null));
+	}
+
+	@Test
+	void encodesLikeTheStandardEncoderAcrossTheBufferBoundary() throws IOException
+	{
+		// Place the pair, and the multi-byte characters, at every offset around the end of the buffer
+		for (int padding = BUFFER_SIZE - 6; padding <= BUFFER_SIZE + 2; padding++)
+		{
+			String text = "a".repeat(padding) + "😀é€<" + "b".repeat(10);
+			assertEncodedAsStandard(text, Mode.STRING);
+			assertEncodedAsStandard(text, Mode.CHARS);
+			assertEncodedAsStandard(text, Mode.SINGLE);
+		}
+	}
+
+	@Test
+	void splitsSurrogatePairAcrossWrites() throws IOException
+	{
+		Path page = directory.resolve("page.html");
+		String prefix = "x".repeat(BUFFER_SIZE - 1);
+		try (HtmlWriter writer = HtmlWriter.open(page))
+		{
+			writer.write(prefix + "\ud83d");
+			writer.write("\ude00");
+		}
+
+		assertArrayEquals((prefix + "😀").getBytes(StandardCharsets.UTF_8), Files.readAllBytes(page));
+	}
+
+	@Test
+	void writesLoneSurrogatesAsQuestionMarks() throws IOException
+	{
+		assertEncodedAsStandard("a\ud83db", Mode.STRING);
+		assertEncodedAsStandard("a\ude00b", Mode.STRING);
+		assertEncodedAsStandard("a\ud83d😀b", Mode.STRING);
+		assertEncodedAsStandard("a\ude00\ud83d", Mode.CHARS);
+		assertEncodedAsStandard("\ud83d", Mode.SINGLE);
+		assertEncodedAsStandard("x".repeat(BUFFER_SIZE) + "\ud83d", Mode.STRING);
+		assertEncodedAsStandard("x".repeat(BUFFER_SIZE - 1) + "\ud83d", Mode.STRING);
+	}
+
+	@Test
+	void secondWriterOnSameThreadGetsItsOwnBuffer() throws IOException
+	{
+		Path outer = directory.resolve("outer.html");
+		Path inner = directory.resolve("inner.html");
+		try (HtmlWriter first = HtmlWriter.open(outer))
+		{
+			first.append("outer ");
+			try (HtmlWriter second = HtmlWriter.open(inner))
+			{
+				second.append("inner");
+			}
+			first.append("page");
+		}
+
+		assertEquals("outer page", Files.readString(outer));
+		assertEquals("inner", Files.readString(inner));
+	}
+
+	private enum Mode
+	{
+		STRING, CHARS, SINGLE
+	}
+
+	private void assertEncodedAsStandard(String text, Mode mode) throws IOException
+	{
+		Path page = directory.resolve("encoded.html");
+		try (HtmlWriter writer = HtmlWriter.open(page))
+		{
+			switch (mode)
+			{
+			case STRING:
+				writer.write(text);
+				break;
+			case CHARS:
+				writer.write(text.toCharArray());
+				break;
+			default:
+				for (int i = 0; i < text.length(); i++)
+				{
+					writer.write(text.charAt(i));
+				}
+			}
+		}
+		assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), Files.readAllBytes(page), mode + " with " + text.length() + " chars");
+	}
+}
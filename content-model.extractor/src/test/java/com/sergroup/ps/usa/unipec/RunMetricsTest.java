@@ -0,0 +1,19 @@
+package com.sergroup.ps.usa.unipec;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class RunMetricsTest
+{
+	@Test
+	void escapesLabelValuesAsTheTextFormatRequires()
+	{
+		assertEquals("sales", RunMetrics.escapeLabelValue("sales"));
+		assertEquals("a\\\"b", RunMetrics.escapeLabelValue("a\"b"));
+		assertEquals("a\\\\b", RunMetrics.escapeLabelValue("a\\b"));
+		assertEquals("a\\nb", RunMetrics.escapeLabelValue("a\nb"));
+		// The backslash is escaped first, so escapes added for quotes are not doubled
+		assertEquals("\\\\\\\"", RunMetrics.escapeLabelValue("\\\""));
+	}
+}
@@ -0,0 +1,93 @@
+package com.sergroup.ps.usa.unipec;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class SearchIndexBuilderTest
+{
+	@TempDir
+	Path directory;
+
+	@Test
+	void tokenizesIntoLowerCaseRunsOfLettersAndDigits()
+	{
+		assertEquals(List.of("invoice", "no", "42", "straße"), tokens("Invoice-No. 42 (STRAßE)"));
+		assertEquals(List.of(), tokens(" ,;- "));
+		assertEquals(List.of(), tokens(null));
+	}
+
+	@Test
+	void keepsLettersOutsideTheBmpInsideTheirToken()
+	{
+		// U+10400 DESERET CAPITAL LONG I lower-cases to U+10428, U+1D49C is a mathematical script letter
+		assertEquals(List.of("a𐐨b", "𝒜x"), tokens("A𐐀B 𝒜X"));
+		// U+1F600 is a symbol and separates tokens like any punctuation
+		assertEquals(List.of("ab", "cd"), tokens("ab😀cd"));
+		// A lone surrogate is not a letter
+		assertEquals(List.of("ab", "cd"), tokens("ab\ud800cd"));
+	}
+
+	@Test
+	void writesSortedTermsWithDeltaEncodedPostings() throws IOException
+	{
+		SearchIndexBuilder builder = new SearchIndexBuilder();
+		builder.addDocument(List.of("invoice", "amount"));
+		builder.addDocument(List.of("contract"));
+		builder.addDocument(List.of("invoice", "amount", "amount"));
+		builder.addDocument(List.of());
+		builder.addDocument(List.of("invoice"));
+
+		String url = builder.write(directory.toString());
+
+		assertTrue(url.matches("search-index\\.js\\?v=[0-9a-f]{10}"), url);
+		JsonNode index = readIndex();
+		assertEquals(5, index.get("documents").asInt());
+		assertEquals("[\"amount\",\"contract\",\"invoice\"]", index.get("terms").toString());
+		assertEquals("[[0,2],[1],[0,2,2]]", index.get("postings").toString());
+	}
+
+	@Test
+	void versionFollowsContent() throws IOException
+	{
+		SearchIndexBuilder first = new SearchIndexBuilder();
+		first.addDocument(List.of("invoice"));
+		SearchIndexBuilder same = new SearchIndexBuilder();
+		same.addDocument(List.of("invoice"));
+		SearchIndexBuilder other = new SearchIndexBuilder();
+		other.addDocument(List.of("contract"));
+
+		String version = first.write(directory.toString());
+
+		assertEquals(version, same.write(directory.toString()));
+		assertNotEquals(version, other.write(directory.toString()));
+	}
+
+	private static List<String> tokens(String text)
+	{
+		Set<String> tokens = new LinkedHashSet<>();
+		SearchIndexBuilder.tokenize(text, tokens);
+		return List.copyOf(tokens);
+	}
+
+	private JsonNode readIndex() throws IOException
+	{
+		String script = Files.readString(directory.resolve(SearchIndexBuilder.INDEX_FILE), StandardCharsets.UTF_8);
+		assertTrue(script.startsWith("window.SEARCH_INDEX = ") && script.endsWith(";\n"), script);
+		return new ObjectMapper().readTree(script.substring("window.SEARCH_INDEX = ".length(), script.length() - 2));
+	}
+}
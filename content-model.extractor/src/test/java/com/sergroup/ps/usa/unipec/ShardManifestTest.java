@@ -0,0 +1,200 @@
+package com.sergroup.ps.usa.unipec;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ShardManifestTest
+{
+	private static final String UUID_A = "cd613e30-d8f1-6adf-91b7-584a2265b1f5";
+	private static final String UUID_B = "c2ce6f44-7ed4-d57b-1e2f-eb89414c343c";
+	private static final String SNAPSHOT = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+	private static final String OTHER_SNAPSHOT = "60303ae22b998861bce3b28f33eec1be758a213c86c93c076dbe9f558c11c752";
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void loadAllMergesShardsInSnapshotOrder() throws IOException
+	{
+		String output = directory.toString();
+		ShardManifest.save(output, 0, 2, SNAPSHOT, 3, List.of(entry(2, "Invoice", "abc", List.of("invoice", "billing"), new String[] { UUID_A, UUID_B }, new int[] { 1, 3 }),
+				entry(0, "Contract", null, List.of(), new String[0], new int[0])));
+		ShardManifest.save(output, 1, 2, SNAPSHOT, 3, List.of(entry(1, "Gr\u00fc\u00dfe \"quoted\"", "def", List.of("gr\u00fc\u00dfe"), new String[] { UUID_A }, new int[] { 2 })));
+
+		List<ShardManifest.Entry> entries = ShardManifest.loadAll(output, 2);
+
+		assertEquals(3, entries.size());
+		assertEquals(0, entries.get(0).position());
+		assertEquals("Contract", entries.get(0).summary().getDocumentName());
+		assertNull(entries.get(0).summary().getContentHash());
+		assertEquals(0, entries.get(0).attributes().length);
+
+		assertEquals("Gr\u00fc\u00dfe \"quoted\"", entries.get(1).summary().getDocumentName());
+		assertEquals(List.of("gr\u00fc\u00dfe"), List.copyOf(entries.get(1).searchTerms()));
+
+		ShardManifest.Entry invoice = entries.get(2);
+		assertEquals(ShardManifest.pageName("Invoice", 1), invoice.summary().getFileName());
+		assertEquals(4, invoice.summary().getAttributeCount());
+		assertEquals("abc", invoice.summary().getContentHash());
+		assertEquals(List.of("invoice", "billing"), List.copyOf(invoice.searchTerms()));
+		assertArrayEquals(new String[] { UUID_A, UUID_B }, invoice.attributes());
+		assertArrayEquals(new int[] { 1, 3 }, invoice.flags());
+	}
+
+	@Test
+	void loadAllFailsOnMissingShard() throws IOException
+	{
+		String output = directory.toString();
+		ShardManifest.save(output, 0, 3, SNAPSHOT, 2, List.of(entry(0, "Contract")));
+		ShardManifest.save(output, 2, 3, SNAPSHOT, 2, List.of(entry(1, "Invoice")));
+
+		IOException e = assertThrows(IOException.class, () -> ShardManifest.loadAll(output, 3));
+		assertTrue(e.getMessage().contains("shard 1 of 3"), e.getMessage());
+	}
+
+	@Test
+	void loadAllFailsOnManifestOfOtherVersion() throws IOException
+	{
+		String output = directory.toString();
+		Path path = ShardManifest.path(output, 0, 1);
+		Files.createDirectories(path.getParent());
+		Files.writeString(path, "{\"version\":99,\"shard\":0,\"count\":1,\"tables\":[]}");
+
+		assertThrows(IOException.class, () -> ShardManifest.loadAll(output, 1));
+	}
+
+	@Test
+	void loadAllFailsOnShardsOfDifferentSnapshots() throws IOException
+	{
+		String output = directory.toString();
+		ShardManifest.save(output, 0, 2, SNAPSHOT, 2, List.of(entry(0, "Contract")));
+		ShardManifest.save(output, 1, 2, OTHER_SNAPSHOT, 2, List.of(entry(1, "Invoice")));
+
+		IOException e = assertThrows(IOException.class, () -> ShardManifest.loadAll(output, 2));
+		assertTrue(e.getMessage().contains(OTHER_SNAPSHOT), e.getMessage());
+	}
+
+	@Test
+	void loadAllFailsOnShardsWithDifferentClassCounts() throws IOException
+	{
+		String output = directory.toString();
+		ShardManifest.save(output, 0, 2, SNAPSHOT, 2, List.of(entry(0, "Contract")));
+		ShardManifest.save(output, 1, 2, SNAPSHOT, 3, List.of(entry(1, "Invoice")));
+
+		assertThrows(IOException.class, () -> ShardManifest.loadAll(output, 2));
+	}
+
+	@Test
+	void loadAllFailsUnlessEveryPositionIsCoveredOnce() throws IOException
+	{
+		String output = directory.toString();
+		// A class missing from every shard
+		ShardManifest.save(output, 0, 2, SNAPSHOT, 3, List.of(entry(0, "Contract")));
+		ShardManifest.save(output, 1, 2, SNAPSHOT, 3, List.of(entry(2, "Invoice")));
+		assertThrows(IOException.class, () -> ShardManifest.loadAll(output, 2));
+
+		// A class rendered by two shards, with as many tables as classes
+		ShardManifest.save(output, 1, 2, SNAPSHOT, 3, List.of(entry(0, "Receipt"), entry(2, "Invoice")));
+		IOException e = assertThrows(IOException.class, () -> ShardManifest.loadAll(output, 2));
+		assertTrue(e.getMessage().contains("position 1"), e.getMessage());
+
+		// Positions counted from 1
+		ShardManifest.save(output, 0, 2, SNAPSHOT, 2, List.of(entry(1, "Contract")));
+		ShardManifest.save(output, 1, 2, SNAPSHOT, 2, List.of(entry(2, "Invoice")));
+		assertThrows(IOException.class, () -> ShardManifest.loadAll(output, 2));
+
+		ShardManifest.save(output, 0, 2, SNAPSHOT, 2, List.of(entry(0, "Contract")));
+		ShardManifest.save(output, 1, 2, SNAPSHOT, 2, List.of(entry(1, "Invoice")));
+		assertEquals(2, ShardManifest.loadAll(output, 2).size());
+	}
+
+	@Test
+	void loadAllFailsOnManifestWithoutSnapshot() throws IOException
+	{
+		String output = directory.toString();
+		Path path = ShardManifest.path(output, 0, 1);
+		Files.createDirectories(path.getParent());
+		Files.writeString(path, "{\"version\":2,\"shard\":0,\"count\":1,\"tables\":[]}");
+
+		assertThrows(IOException.class, () -> ShardManifest.loadAll(output, 1));
+	}
+
+	@Test
+	void saveReplacesPreviousManifest() throws IOException
+	{
+		String output = directory.toString();
+		ShardManifest.save(output, 0, 1, SNAPSHOT, 1, List.of(entry(0, "Contract")));
+		ShardManifest.save(output, 0, 1, SNAPSHOT, 1, List.of(entry(0, "Invoice")));
+
+		List<ShardManifest.Entry> entries = ShardManifest.loadAll(output, 1);
+
+		assertEquals(1, entries.size());
+		assertEquals("Invoice", entries.get(0).summary().getDocumentName());
+		assertTrue(Files.notExists(Path.of(ShardManifest.path(output, 0, 1) + ".tmp")));
+	}
+
+	@Test
+	void loadSummariesKeysPreviousRunByFileName() throws IOException
+	{
+		String output = directory.toString();
+		assertTrue(ShardManifest.loadSummaries(output, 1, 2).isEmpty());
+
+		ShardManifest.save(output, 1, 2, SNAPSHOT, 6, List.of(entry(5, "Invoice", "def", List.of(), new String[0], new int[0])));
+		Map<String, TableSummary> summaries = ShardManifest.loadSummaries(output, 1, 2);
+
+		assertEquals(1, summaries.size());
+		assertEquals("def", summaries.get(ShardManifest.pageName("Invoice", 1)).getContentHash());
+	}
+
+	@Test
+	void loadSummariesIgnoresUnreadableManifest() throws IOException
+	{
+		String output = directory.toString();
+		Path path = ShardManifest.path(output, 0, 1);
+		Files.createDirectories(path.getParent());
+		Files.writeString(path, "{\"version\":1,\"tables\":[");
+
+		assertTrue(ShardManifest.loadSummaries(output, 0, 1).isEmpty());
+	}
+
+	@Test
+	void pageNamesAndShardsDependOnlyOnTheName()
+	{
+		String page = ShardManifest.pageName("Invoice", 1);
+
+		assertTrue(page.matches("table_[0-9a-f]{16}\\.html"), page);
+		assertEquals(page, ShardManifest.pageName("Invoice", 1));
+		assertEquals(page.replace(".html", "_2.html"), ShardManifest.pageName("Invoice", 2));
+		assertNotEquals(page, ShardManifest.pageName("invoice", 1));
+		for (int count = 1; count <= 16; count++)
+		{
+			int shard = ShardManifest.shardOf("Invoice", count);
+			assertTrue(shard >= 0 && shard < count);
+			assertEquals(shard, ShardManifest.shardOf("Invoice", count));
+		}
+	}
+
+	private static ShardManifest.Entry entry(int position, String documentName)
+	{
+		return entry(position, documentName, "abc", List.of(), new String[0], new int[0]);
+	}
+
+	private static ShardManifest.Entry entry(int position, String documentName, String contentHash, List<String> terms, String[] attributes, int[] flags)
+	{
+		TableSummary summary = new TableSummary(documentName, ShardManifest.pageName(documentName, 1), attributes.length + 2, contentHash);
+		return new ShardManifest.Entry(position, summary, terms, attributes, flags);
+	}
+}
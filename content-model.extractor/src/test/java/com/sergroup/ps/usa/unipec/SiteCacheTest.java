@@ -0,0 +1,65 @@
+package com.sergroup.ps.usa.unipec;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SiteCacheTest
+{
+	@TempDir
+	Path directory;
+
+	@Test
+	void servesOnlySiteFiles() throws IOException
+	{
+		for (String path : new String[] { "index.html", "table_00000001.html", "assets/bundle-0123456789.css", "assets/bundle-0123456789.js",
+				"search-index.js", "attributes/index.html", "attributes/00000000-0000-0000-0000-000000000001.html", "changes.html", "changes.json",
+				"manifest.json", "shards/shard-0-of-2.json", "attribute_definitions.0-0.bin", "run.prom", "table_00000002.html.part",
+				"attributes/notes.txt", "shards/leftover.html" })
+		{
+			write(path);
+		}
+
+		SiteCache cache = SiteCache.load(directory.toString(), SiteCache.empty());
+
+		assertEquals(9, cache.size());
+		assertNotNull(cache.get("assets/bundle-0123456789.css"));
+		assertNotNull(cache.get("attributes/00000000-0000-0000-0000-000000000001.html"));
+		assertNotNull(cache.get("changes.json"));
+		assertNull(cache.get("manifest.json"));
+		assertNull(cache.get("shards/shard-0-of-2.json"));
+		assertNull(cache.get("shards/leftover.html"));
+		assertNull(cache.get("attribute_definitions.0-0.bin"));
+		assertNull(cache.get("attributes/notes.txt"));
+	}
+
+	@Test
+	void reusesUnchangedPages() throws IOException
+	{
+		write("index.html");
+		write("table_00000001.html");
+		SiteCache previous = SiteCache.load(directory.toString(), SiteCache.empty());
+		Files.writeString(directory.resolve("table_00000001.html"), "changed content", StandardCharsets.UTF_8);
+
+		SiteCache next = SiteCache.load(directory.toString(), previous);
+
+		assertSame(previous.get("index.html"), next.get("index.html"));
+		assertEquals("changed content", new String(next.get("table_00000001.html").content(), StandardCharsets.UTF_8));
+	}
+
+	private void write(String path) throws IOException
+	{
+		Path file = directory.resolve(path);
+		Files.createDirectories(file.getParent());
+		Files.writeString(file, path, StandardCharsets.UTF_8);
+	}
+}
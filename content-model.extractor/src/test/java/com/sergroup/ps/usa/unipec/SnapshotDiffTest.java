@@ -0,0 +1,171 @@
+package com.sergroup.ps.usa.unipec;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+class SnapshotDiffTest
+{
+	private static final String AMOUNT = "00000000-0000-0000-0000-000000000001";
+	private static final String DATE = "00000000-0000-0000-0000-000000000002";
+	private static final String NUMBER = "00000000-0000-0000-0000-000000000003";
+	private static final String OWNER = "00000000-0000-0000-0000-000000000004";
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void reportsAddedRemovedAndModifiedAttributeDefinitions() throws IOException
+	{
+		JsonNode attributes = compare("[]", "[]",
+				definitions(definition(AMOUNT, "Amount", "DECIMAL"), definition(DATE, "Date", "DATE"), definition(NUMBER, "Number", "STRING")),
+				definitions(definition(OWNER, "Owner", "STRING"), definition(DATE, "Invoice date", "DATE"), definition(NUMBER, "Number", "STRING")))
+				.path("attributes");
+
+		assertEquals(List.of(OWNER), uuids(attributes.path("added")));
+		assertEquals(List.of(AMOUNT), uuids(attributes.path("removed")));
+		assertEquals(List.of(DATE), uuids(attributes.path("modified")));
+		JsonNode change = attributes.path("modified").get(0).path("changes");
+		assertEquals(1, change.size());
+		assertEquals("name", change.get(0).path("field").asText());
+		assertEquals("Date", change.get(0).path("previous").asText());
+		assertEquals("Invoice date", change.get(0).path("current").asText());
+	}
+
+	@Test
+	void reportsAddedRemovedAndModifiedClasses() throws IOException
+	{
+		String definitions = definitions(definition(AMOUNT, "Amount", "DECIMAL"), definition(DATE, "Date", "DATE"), definition(NUMBER, "Number", "STRING"));
+		JsonNode classes = compare(
+				classes(documentClass("Contract", usage(AMOUNT, false, false)), documentClass("Invoice", usage(AMOUNT, true, false), usage(DATE, false, false),
+						usage(NUMBER, false, true)), documentClass("Unchanged", usage(DATE, false, false))),
+				classes(documentClass("Invoice", usage(AMOUNT, false, false), usage(NUMBER, false, true), usage(OWNER, true, true)),
+						documentClass("Unchanged", usage(DATE, false, false)), documentClass("Receipt", usage(DATE, false, false), usage(AMOUNT, false, false))),
+				definitions, definitions).path("classes");
+
+		assertEquals(List.of("Receipt"), names(classes.path("added")));
+		assertEquals(2, classes.path("added").get(0).path("attributeCount").asInt());
+		assertEquals(List.of("Contract"), names(classes.path("removed")));
+		assertEquals(List.of("Invoice"), names(classes.path("modified")));
+
+		JsonNode changes = classes.path("modified").get(0).path("changes");
+		assertEquals(3, changes.size());
+		// Mandatory flipped off, readonly unchanged and therefore not reported
+		assertEquals("flagsChanged", changes.get(0).path("type").asText());
+		assertEquals(AMOUNT, changes.get(0).path("uuid").asText());
+		assertTrue(changes.get(0).path("mandatory").path("previous").asBoolean());
+		assertFalse(changes.get(0).path("mandatory").path("current").asBoolean());
+		assertTrue(changes.get(0).path("readonly").isMissingNode());
+		assertEquals("added", changes.get(1).path("type").asText());
+		assertEquals(OWNER, changes.get(1).path("uuid").asText());
+		assertTrue(changes.get(1).path("mandatory").asBoolean());
+		assertTrue(changes.get(1).path("readonly").asBoolean());
+		assertEquals("removed", changes.get(2).path("type").asText());
+		assertEquals(DATE, changes.get(2).path("uuid").asText());
+		assertEquals("Date", changes.get(2).path("name").asText());
+	}
+
+	@Test
+	void matchesRepeatedClassNamesByOccurrence() throws IOException
+	{
+		String definitions = definitions(definition(AMOUNT, "Amount", "DECIMAL"), definition(DATE, "Date", "DATE"));
+		JsonNode classes = compare(
+				classes(documentClass("Invoice", usage(AMOUNT, false, false)), documentClass("Invoice", usage(DATE, false, false))),
+				classes(documentClass("Invoice", usage(AMOUNT, false, false)), documentClass("Invoice", usage(DATE, true, false)),
+						documentClass("Invoice", usage(DATE, false, false))),
+				definitions, definitions).path("classes");
+
+		assertEquals(1, classes.path("added").size());
+		assertEquals("Invoice", classes.path("added").get(0).path("name").asText());
+		assertEquals(3, classes.path("added").get(0).path("occurrence").asInt());
+		assertEquals(0, classes.path("removed").size());
+		assertEquals(1, classes.path("modified").size());
+		assertEquals(2, classes.path("modified").get(0).path("occurrence").asInt());
+	}
+
+	@Test
+	void listsRemovalsInSnapshotOrder() throws IOException
+	{
+		List<String> classNames = new ArrayList<>();
+		StringBuilder previous = new StringBuilder();
+		List<String> uuids = new ArrayList<>();
+		StringBuilder previousDefinitions = new StringBuilder();
+		for (int i = 0; i < 50; i++)
+		{
+			String name = "Class " + (char) ('z' - i % 26) + i;
+			classNames.add(name);
+			previous.append(i > 0 ? "," : "").append(documentClass(name));
+			String uuid = String.format("%08x-0000-0000-0000-000000000000", (i * 7919) % 50);
+			uuids.add(uuid);
+			previousDefinitions.append(i > 0 ? "," : "").append(definition(uuid, "Attribute " + i, "STRING"));
+		}
+
+		JsonNode report = compare("[" + previous + "]", "[]", "[" + previousDefinitions + "]", "[]");
+
+		assertEquals(classNames, names(report.path("classes").path("removed")));
+		assertEquals(uuids, uuids(report.path("attributes").path("removed")));
+	}
+
+	private JsonNode compare(String previousClasses, String currentClasses, String previousDefinitions, String currentDefinitions) throws IOException
+	{
+		return SnapshotDiff.compare(write("previous_types.json", previousClasses), write("types.json", currentClasses),
+				write("previous_definitions.json", previousDefinitions), write("definitions.json", currentDefinitions));
+	}
+
+	private Path write(String name, String content) throws IOException
+	{
+		return Files.writeString(directory.resolve(name), content, StandardCharsets.UTF_8);
+	}
+
+	private static String definitions(String... definitions)
+	{
+		return "[" + String.join(",", definitions) + "]";
+	}
+
+	private static String definition(String uuid, String name, String dataType)
+	{
+		return "{\"uuid\":\"" + uuid + "\",\"name\":\"" + name + "\",\"attributeDataType\":\"" + dataType
+				+ "\",\"length\":0,\"multivalueType\":\"SINGLE_VALUE\",\"fulltextUsage\":\"NONE\"}";
+	}
+
+	private static String classes(String... classes)
+	{
+		return "[" + String.join(",", classes) + "]";
+	}
+
+	private static String documentClass(String name, String... usages)
+	{
+		return "{\"name\":\"" + name + "\",\"allowedAttributeDefinitions\":[" + String.join(",", usages) + "]}";
+	}
+
+	private static String usage(String uuid, boolean mandatory, boolean readonly)
+	{
+		return "{\"attributeDefinitionUUID\":\"" + uuid + "\",\"mandatory\":" + mandatory + ",\"readonly\":" + readonly + "}";
+	}
+
+	private static List<String> names(JsonNode list)
+	{
+		List<String> names = new ArrayList<>();
+		list.forEach(node -> names.add(node.path("name").asText()));
+		return names;
+	}
+
+	private static List<String> uuids(JsonNode list)
+	{
+		List<String> uuids = new ArrayList<>();
+		list.forEach(node -> uuids.add(node.path("uuid").asText()));
+		return uuids;
+	}
+}
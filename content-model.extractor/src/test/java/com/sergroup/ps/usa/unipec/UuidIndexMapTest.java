@@ -0,0 +1,142 @@
+package com.sergroup.ps.usa.unipec;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+class UuidIndexMapTest
+{
+	@Test
+	void growsAndFindsEveryKeyLikeHashMap()
+	{
+		Random random = new Random(42);
+		UuidIndexMap<Integer> map = new UuidIndexMap<>();
+		Map<String, Integer> expected = new HashMap<>();
+		List<String> keys = new ArrayList<>();
+		for (int i = 0; i < 5000; i++)
+		{
+			String key = new UUID(random.nextLong(), random.nextLong()).toString();
+			keys.add(key);
+			map.put(key, i);
+			expected.put(key, i);
+		}
+
+		assertEquals(expected.size(), map.size());
+		for (int i = 0; i < keys.size(); i++)
+		{
+			assertEquals(expected.get(keys.get(i)), map.get(keys.get(i)));
+			assertEquals(i, map.indexOf(keys.get(i)));
+			assertEquals(i, map.valueAt(i));
+		}
+		assertNull(map.get(new UUID(random.nextLong(), random.nextLong()).toString()));
+	}
+
+	@Test
+	void keepsKeysThatShareHalfOfTheirBits()
+	{
+		// Keys that agree in one half probe into the same neighbourhood
+		UuidIndexMap<String> map = new UuidIndexMap<>(4);
+		List<String> keys = new ArrayList<>();
+		for (int i = 0; i < 100; i++)
+		{
+			keys.add(new UUID(0x1234L, i).toString());
+			keys.add(new UUID(i, 0x1234L).toString());
+		}
+		keys.add(new UUID(0, 0).toString());
+		keys.add(new UUID(-1, -1).toString());
+		// Parses to the INVALID marker, so it is kept in the fallback map
+		keys.add(new UUID(Long.MIN_VALUE, Long.MIN_VALUE).toString());
+		for (String key : keys)
+		{
+			map.put(key, key);
+		}
+
+		assertEquals(keys.size(), map.size());
+		for (String key : keys)
+		{
+			assertEquals(key, map.get(key));
+		}
+	}
+
+	@Test
+	void overwritesInPlace()
+	{
+		UuidIndexMap<String> map = new UuidIndexMap<>();
+		String first = "cd613e30-d8f1-6adf-91b7-584a2265b1f5";
+		String second = "c2ce6f44-7ed4-d57b-1e2f-eb89414c343c";
+		map.put(first, "a");
+		map.put(second, "b");
+		map.put(first, "c");
+
+		assertEquals(2, map.size());
+		assertEquals("c", map.get(first));
+		assertEquals(0, map.indexOf(first));
+		assertEquals("b", map.valueAt(1));
+	}
+
+	@Test
+	void storesNonCanonicalKeysByExactSpelling()
+	{
+		UuidIndexMap<String> map = new UuidIndexMap<>();
+		String lower = "cd613e30-d8f1-6adf-91b7-584a2265b1f5";
+		String upper = lower.toUpperCase();
+		String braced = "{" + lower + "}";
+		String fullWidth = lower.replace('1', '\uff11');
+		map.put(lower, "lower");
+		map.put(upper, "upper");
+		map.put(braced, "braced");
+		map.put(fullWidth, "full width");
+		map.put("not a uuid", "text");
+		map.put("", "empty");
+
+		assertEquals(6, map.size());
+		assertEquals("lower", map.get(lower));
+		assertEquals("upper", map.get(upper));
+		assertEquals("braced", map.get(braced));
+		assertEquals("full width", map.get(fullWidth));
+		assertEquals("text", map.get("not a uuid"));
+		assertEquals("empty", map.get(""));
+		assertEquals("upper", map.valueAt(map.indexOf(upper)));
+		assertNull(map.get("Cd613e30-d8f1-6adf-91b7-584a2265b1f5"));
+		assertNull(map.get("cd613e30d8f16adf91b7584a2265b1f5"));
+		assertFalse(map.containsKey(null));
+	}
+
+	@Test
+	void upperCaseLookupDoesNotFindLowerCaseKey()
+	{
+		UuidIndexMap<String> map = new UuidIndexMap<>();
+		map.put("cd613e30-d8f1-6adf-91b7-584a2265b1f5", "lower");
+
+		assertNull(map.get("CD613E30-D8F1-6ADF-91B7-584A2265B1F5"));
+		assertEquals(-1, map.indexOf("CD613E30-D8F1-6ADF-91B7-584A2265B1F5"));
+	}
+
+	@Test
+	void clearRemovesAllKeys()
+	{
+		UuidIndexMap<String> map = new UuidIndexMap<>();
+		String key = "cd613e30-d8f1-6adf-91b7-584a2265b1f5";
+		map.put(key, "a");
+		map.put("other", "b");
+		map.clear();
+
+		assertEquals(0, map.size());
+		assertFalse(map.containsKey(key));
+		assertFalse(map.containsKey("other"));
+
+		map.put(key, "c");
+		assertTrue(map.containsKey(key));
+		assertEquals(0, map.indexOf(key));
+	}
+}